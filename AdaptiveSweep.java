@@ -0,0 +1,256 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * AdaptiveSweep
+ *
+ * Адаптивный расчет вероятности образования стягивающего кластера. Вместо фиксированного количества итераций для
+ * каждого p выборка наращивается порциями блоков (TrialExecutor.runBlocks), пока доверительный интервал Pc не станет
+ * уже заданной ширины. Вдали от порога Pc почти точно равна 0 или 1, и для этого достаточно нескольких десятков
+ * итераций, поэтому итерации расходуются в основном вблизи порога.
+ *
+ * После расчета заданной сетки значений p участок, на котором Pc переходит через 0.5, уточняется делением пополам:
+ * в середине отрезка рассчитывается новое значение p, и отрезок заменяется той половиной, на которой сохраняется
+ * переход. Деление прекращается, когда доверительный интервал Pc в середине отрезка содержит 0.5, поскольку при
+ * заданной точности сторона перехода уже не определяется. Порог протекания оценивается линейной интерполяцией по
+ * концам последнего отрезка.
+ *
+ * Каждому значению p, включая добавленные при уточнении, присваивается свой номер генератора, а размер порций
+ * зависит только от результатов предыдущих порций, поэтому результат воспроизводим при любом количестве потоков.
+ *
+ * @author Artur Manukian
+ */
+
+public class AdaptiveSweep {
+
+    /* Вид доверительного интервала */
+    public enum Interval {
+        WILSON, // Интервал Вильсона.
+        CLOPPER_PEARSON // Точный интервал Клоппера-Пирсона.
+    }
+
+    private final TrialExecutor executor;
+    private final int heightGrid;
+    private final int widthGrid;
+    private final int depthGrid;
+
+    // Наибольшая ширина 95-процентного доверительного интервала.
+    private double width = 0.05;
+    // Наибольшее количество итераций для одного значения p.
+    private int maxTrials = 10000;
+    // Количество делений пополам отрезка перехода через 0.5.
+    private int refinements = 8;
+    private Interval interval = Interval.WILSON;
+
+    public AdaptiveSweep(TrialExecutor executor, int heightGrid, int widthGrid) {
+        this(executor, heightGrid, widthGrid, 1);
+    }
+
+    public AdaptiveSweep(TrialExecutor executor, int heightGrid, int widthGrid, int depthGrid) {
+        this.executor = executor;
+        this.heightGrid = heightGrid;
+        this.widthGrid = widthGrid;
+        this.depthGrid = depthGrid;
+    }
+
+    public AdaptiveSweep setWidth(double width) {
+        this.width = width;
+        return this;
+    }
+
+    public AdaptiveSweep setMaxTrials(int maxTrials) {
+        this.maxTrials = maxTrials;
+        return this;
+    }
+
+    public AdaptiveSweep setRefinements(int refinements) {
+        this.refinements = refinements;
+        return this;
+    }
+
+    public AdaptiveSweep setInterval(Interval interval) {
+        this.interval = interval;
+        return this;
+    }
+
+    /* Расчет */
+    // p - начальная сетка значений, возвращает все рассчитанные
+    // точки по возрастанию p и оценку порога протекания.
+    public Result run(double[] p) {
+        List<Point> points = new ArrayList<Point>();
+        for (double value : p) {
+            points.add(new Point(value, points.size()));
+        }
+        sample(points);
+        Collections.sort(points, BY_P);
+
+        // Отрезок [above, below]: Pc(above) >= 0.5 > Pc(below).
+        Point above = null;
+        Point below = null;
+        for (int k = 0; k + 1 < points.size(); k++) {
+            if (points.get(k).pc() >= 0.5 && points.get(k + 1).pc() < 0.5) {
+                above = points.get(k);
+                below = points.get(k + 1);
+                break;
+            }
+        }
+        double threshold = Double.NaN;
+        if (above != null) {
+            for (int k = 0; k < refinements; k++) {
+                Point middle = new Point((above.p + below.p) / 2, points.size());
+                points.add(middle);
+                sample(Collections.singletonList(middle));
+                if (middle.pc() >= 0.5) {
+                    above = middle;
+                } else {
+                    below = middle;
+                }
+                // Интервал содержит 0.5: при заданной точности сторона
+                // перехода не определяется, дальнейшее деление бесполезно.
+                double[] bounds = middle.interval();
+                if (bounds[0] <= 0.5 && bounds[1] >= 0.5) {
+                    break;
+                }
+            }
+            double fraction = (above.pc() - 0.5) / (above.pc() - below.pc());
+            threshold = above.p + fraction * (below.p - above.p);
+            Collections.sort(points, BY_P);
+        }
+        return new Result(points, threshold);
+    }
+
+    // Наращивание выборки всех точек до требуемой ширины интервала.
+    // Все незавершенные точки рассчитываются одной порцией блоков.
+    private void sample(List<Point> points) {
+        int maxBlocks = TrialExecutor.blocks(maxTrials);
+        while (true) {
+            List<Point> active = new ArrayList<Point>();
+            for (Point point : points) {
+                if (point.blocks == 0 || (point.width() > width && point.blocks < maxBlocks)) {
+                    active.add(point);
+                }
+            }
+            if (active.isEmpty()) {
+                return;
+            }
+            double[] p = new double[active.size()];
+            int[] ids = new int[active.size()];
+            int[] first = new int[active.size()];
+            int[] count = new int[active.size()];
+            for (int k = 0; k < active.size(); k++) {
+                Point point = active.get(k);
+                p[k] = point.p;
+                ids[k] = point.id;
+                first[k] = point.blocks;
+                count[k] = Math.min(maxBlocks - point.blocks, point.nextBlocks());
+            }
+            long[] spanning = executor.runBlocks(heightGrid, widthGrid, depthGrid, p, ids, first, count);
+            for (int k = 0; k < active.size(); k++) {
+                Point point = active.get(k);
+                point.blocks += count[k];
+                point.trials += (long) count[k] * TrialExecutor.BLOCK;
+                point.spanning += spanning[k];
+            }
+        }
+    }
+
+    private static final Comparator<Point> BY_P = new Comparator<Point>() {
+        @Override
+        public int compare(Point a, Point b) {
+            return Double.compare(a.p, b.p);
+        }
+    };
+
+    /* Рассчитанное значение p */
+    public final class Point {
+
+        private final double p;
+        // Номер генератора.
+        private final int id;
+        private int blocks;
+        private long trials;
+        private long spanning;
+
+        Point(double p, int id) {
+            this.p = p;
+            this.id = id;
+        }
+
+        public double p() {
+            return p;
+        }
+
+        public long trials() {
+            return trials;
+        }
+
+        public long spanning() {
+            return spanning;
+        }
+
+        public double pc() {
+            return (double) spanning / trials;
+        }
+
+        // Доверительный интервал Pc.
+        public double[] interval() {
+            return interval == Interval.WILSON
+                    ? Confidence.wilson(spanning, trials, Confidence.Z95)
+                    : Confidence.clopperPearson(spanning, trials, 0.05);
+        }
+
+        double width() {
+            double[] bounds = interval();
+            return bounds[1] - bounds[0];
+        }
+
+        // Размер следующей порции: оценка недостающих итераций по
+        // ширине нормального интервала 2z * sqrt(Pc (1 - Pc) / n),
+        // не меньше одного блока и не больше уже выполненных.
+        int nextBlocks() {
+            if (blocks == 0) {
+                return 1;
+            }
+            // Оценка Pc сдвигается от 0 и 1, чтобы при нулевой
+            // дисперсии выборки не получить нулевую потребность.
+            double pc = (spanning + 1.0) / (trials + 2);
+            double needed = 4 * Confidence.Z95 * Confidence.Z95 * pc * (1 - pc) / (width * width);
+            int missing = (int) Math.ceil((needed - trials) / TrialExecutor.BLOCK);
+            return Math.max(1, Math.min(blocks, missing));
+        }
+    }
+
+    /* Результат расчета */
+    public static final class Result {
+
+        private final List<Point> points;
+        private final double threshold;
+
+        Result(List<Point> points, double threshold) {
+            this.points = Collections.unmodifiableList(points);
+            this.threshold = threshold;
+        }
+
+        // Все рассчитанные значения p по возрастанию.
+        public List<Point> points() {
+            return points;
+        }
+
+        // Оценка p, при которой Pc = 0.5; NaN, если
+        // на начальной сетке нет перехода через 0.5.
+        public double threshold() {
+            return threshold;
+        }
+
+        // Общее количество итераций.
+        public long trials() {
+            long trials = 0;
+            for (Point point : points) {
+                trials += point.trials;
+            }
+            return trials;
+        }
+    }
+}
\ No newline at end of file
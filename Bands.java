@@ -0,0 +1,108 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Bands
+ *
+ * Деление внутренних строк (или слоев) сетки на полосы, которые обрабатываются параллельно в пуле ForkJoin, и сведение
+ * изменения поля за шаг, измеренного по полосам. Общая часть решателей уравнения диффузии DiffusionSolver и
+ * DiffusionSolver3D: полоса band содержит строки [from(band), to(band)), строки нумеруются с 1.
+ *
+ * @author Artur Manukian
+ */
+
+public final class Bands {
+
+    private final ForkJoinPool pool;
+    // Количество внутренних строк и полос.
+    private final int rows;
+    private final int count;
+
+    // Изменение поля на последнем измеренном шаге: наибольшее,
+    // среднеквадратичное и наибольшее значение поля. Массивы
+    // хранят значения по полосам.
+    private double maxChange;
+    private double rmsChange;
+    private double maxValue;
+    private final double[] bandMaxChange;
+    private final double[] bandSquares;
+    private final double[] bandMaxValue;
+
+    // minBand - минимальное количество строк в полосе.
+    public Bands(int rows, int minBand, int threads) {
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.rows = rows;
+        this.count = Math.max(1, Math.min(threads * 4, rows / minBand));
+        this.bandMaxChange = new double[count];
+        this.bandSquares = new double[count];
+        this.bandMaxValue = new double[count];
+    }
+
+    public int count() {
+        return count;
+    }
+
+    // Первая строка полосы.
+    public int from(int band) {
+        return 1 + band * rows / count;
+    }
+
+    // Строка, следующая за последней строкой полосы.
+    public int to(int band) {
+        return 1 + (band + 1) * rows / count;
+    }
+
+    // Выполнение полос параллельно или последовательно
+    // для небольших сеток.
+    public void run(Blocks.Block block) {
+        if (pool == null || count == 1) {
+            for (int band = 0; band < count; band++) {
+                block.run(band);
+            }
+        } else {
+            pool.invoke(new Blocks(block, 0, count));
+        }
+    }
+
+    /* Изменение поля за шаг */
+    // Значения полосы: наибольшее изменение, сумма квадратов
+    // изменений и наибольшее значение поля.
+    public void setChange(int band, double max, double squares, double value) {
+        bandMaxChange[band] = max;
+        bandSquares[band] = squares;
+        bandMaxValue[band] = value;
+    }
+
+    // Сведение значений полос, sites - количество внутренних узлов.
+    public void reduceChange(double sites) {
+        double max = 0;
+        double squares = 0;
+        double value = 0;
+        for (int band = 0; band < count; band++) {
+            max = Math.max(max, bandMaxChange[band]);
+            squares += bandSquares[band];
+            value = Math.max(value, bandMaxValue[band]);
+        }
+        maxChange = max;
+        rmsChange = Math.sqrt(squares / sites);
+        maxValue = value;
+    }
+
+    public double maxChange() {
+        return maxChange;
+    }
+
+    public double rmsChange() {
+        return rmsChange;
+    }
+
+    // Наибольшее изменение относительно наибольшего значения поля.
+    public double relativeChange() {
+        return maxValue > 0 ? maxChange / maxValue : maxChange;
+    }
+
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
\ No newline at end of file
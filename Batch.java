@@ -0,0 +1,406 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch
+ *
+ * Пакетный запуск расчетов: все задания файла заданий рассчитываются в одной JVM на ограниченном пуле потоков, поэтому
+ * запуск JVM и JIT-компиляция расчетных циклов выполняются один раз на все задания, а не на каждый вариант
+ * параметров. Задания используют модели PercolationModel, Scenario (Diffusion.solve) и PercolationImageModel.
+ *
+ *   java Batch [-j количество] [-o каталог] файл...
+ *
+ * -j - количество одновременно выполняемых заданий (по умолчанию по количеству процессоров, но не больше количества
+ * заданий), каждое задание по умолчанию получает процессоры / количество потоков расчета; -o - каталог результатов
+ * (по умолчанию batch).
+ *
+ * Файл заданий состоит из строк "ключ = значение", как файл сценария. Строки до первого заголовка [имя] задают
+ * значения по умолчанию для всех заданий, каждый заголовок начинает новое задание. Ключ model выбирает модель
+ * (percolation, diffusion или image), ключ scenario - файл сценария диффузии (относительно файла заданий), остальные
+ * ключи передаются модели в порядке записи. Значения, разделенные |, дают по заданию на каждое значение (для
+ * нескольких ключей - на каждое сочетание), к имени таких заданий добавляется номер:
+ *
+ *   model = percolation
+ *   n = 500
+ *
+ *   [size]
+ *   heightGrid = 50 | 100 | 200   # задания size-1, size-2, size-3
+ *   widthGrid = 100
+ *
+ *   [chimneys]
+ *   model = diffusion
+ *   scenario = chimneys.txt
+ *
+ * Для каждого задания в каталог результатов записывается отчет имя.txt с тем же текстом, что выводят программы
+ * Percolation, Diffusion и PercolationImage. Файлы результатов моделей, если в задании не задан ключ output
+ * (statisticsFile для перколяции), также записываются в каталог результатов: имя-field.txt (.bin), имя-clusters.txt
+ * и имя.png. После расчета всех заданий записывается сводка index.tsv: имя, модель, состояние, время, краткий
+ * результат и отчет. Ошибка одного задания не останавливает остальные, код завершения программы в этом случае - 1.
+ *
+ * @author Artur Manukian
+ */
+
+public class Batch {
+
+    public static void main(String[] args) throws IOException {
+
+        /* Аргументы */
+        int processors = Runtime.getRuntime().availableProcessors();
+        int parallel = 0;
+        Path directory = Paths.get("batch");
+        List<Path> manifests = new ArrayList<Path>();
+        for (int k = 0; k < args.length; k++) {
+            if (args[k].equals("-j") && k + 1 < args.length) {
+                parallel = Integer.parseInt(args[++k]);
+            } else if (args[k].equals("-o") && k + 1 < args.length) {
+                directory = Paths.get(args[++k]);
+            } else {
+                manifests.add(Paths.get(args[k]));
+            }
+        }
+        if (manifests.isEmpty()) {
+            System.err.println("Использование: java Batch [-j количество] [-o каталог] файл...");
+            System.exit(2);
+        }
+
+        /* Чтение заданий */
+        // Параметры всех заданий проверяются до начала расчета.
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Path manifest : manifests) {
+            entries.addAll(read(manifest));
+        }
+        Set<String> names = new HashSet<String>();
+        for (Entry entry : entries) {
+            if (!names.add(entry.name)) {
+                throw new IOException("Повторяющееся имя задания: " + entry.name);
+            }
+        }
+        parallel = Math.max(1, Math.min(parallel > 0 ? parallel : processors, entries.size()));
+        int threads = Math.max(1, processors / parallel);
+        Files.createDirectories(directory);
+        final List<Job> jobs = new ArrayList<Job>();
+        for (Entry entry : entries) {
+            jobs.add(job(entry, directory, threads));
+        }
+
+        /* Расчет заданий */
+        System.out.println("Заданий: " + jobs.size() + ", одновременно: " + parallel + ", потоков на задание: "
+                + threads);
+        ExecutorService pool = Executors.newFixedThreadPool(parallel, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "batch-job-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final AtomicInteger done = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final Job job : jobs) {
+            futures.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    job.execute();
+                    System.out.println(String.format(Locale.ENGLISH, "[%d/%d] %s: %s, %.2f с", done.incrementAndGet(),
+                            jobs.size(), job.name, job.error == null ? "выполнено" : "ошибка: " + job.error,
+                            job.seconds));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        pool.shutdown();
+
+        /* Сводка */
+        int failed = 0;
+        Path index = directory.resolve("index.tsv");
+        BufferedWriter writer = Files.newBufferedWriter(index, StandardCharsets.UTF_8);
+        try {
+            writer.write("# name\tmodel\tstatus\tseconds\tsummary\treport");
+            writer.newLine();
+            for (Job job : jobs) {
+                failed += job.error == null ? 0 : 1;
+                writer.write(job.name + "\t" + job.model + "\t" + (job.error == null ? "ok" : "failed") + "\t"
+                        + String.format(Locale.ROOT, "%.3f", job.seconds) + "\t"
+                        + (job.error == null ? job.summary : job.error.replace('\t', ' ').replace('\n', ' ')) + "\t"
+                        + job.report.getFileName());
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+        System.out.println("Сводка: " + index.toAbsolutePath());
+        if (failed > 0) {
+            System.err.println("Заданий с ошибкой: " + failed);
+            System.exit(1);
+        }
+    }
+
+    /* Описание задания в файле */
+    private static final class Entry {
+
+        private final String name;
+        // Файл заданий, относительно которого задаются файлы сценариев.
+        private final Path manifest;
+        // Пары ключ - значение в порядке записи.
+        private final List<String[]> values;
+
+        Entry(String name, Path manifest, List<String[]> values) {
+            this.name = name;
+            this.manifest = manifest;
+            this.values = values;
+        }
+
+        // Последнее значение ключа или null.
+        String get(String key) {
+            String value = null;
+            for (String[] pair : values) {
+                if (pair[0].equals(key)) {
+                    value = pair[1];
+                }
+            }
+            return value;
+        }
+    }
+
+    /* Чтение файла заданий */
+    // Значения по умолчанию добавляются в начало каждого задания,
+    // поэтому ключи задания их переопределяют.
+    static List<Entry> read(Path path) throws IOException {
+        List<String[]> defaults = new ArrayList<String[]>();
+        List<String> sections = new ArrayList<String>();
+        List<List<String[]>> sectionValues = new ArrayList<List<String[]>>();
+        List<String[]> current = defaults;
+
+        BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        try {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    String name = line.substring(1, line.length() - 1).trim();
+                    if (name.isEmpty() || name.contains("/") || name.contains("\\")) {
+                        throw new IOException(path + ":" + number + ": недопустимое имя задания: " + line);
+                    }
+                    current = new ArrayList<String[]>();
+                    sections.add(name);
+                    sectionValues.add(current);
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                if (separator < 0) {
+                    throw new IOException(path + ":" + number + ": ожидается \"ключ = значение\": " + line);
+                }
+                current.add(new String[] {line.substring(0, separator).trim(), line.substring(separator + 1).trim()});
+            }
+        } finally {
+            reader.close();
+        }
+
+        /* Варианты значений */
+        // Значения a | b | c дают задание на каждое сочетание,
+        // последний такой ключ изменяется быстрее остальных.
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int section = 0; section < sections.size(); section++) {
+            List<String[]> values = new ArrayList<String[]>(defaults);
+            values.addAll(sectionValues.get(section));
+            String[][] variants = new String[values.size()][];
+            int combinations = 1;
+            for (int k = 0; k < values.size(); k++) {
+                variants[k] = values.get(k)[1].split("\\|");
+                for (int m = 0; m < variants[k].length; m++) {
+                    variants[k][m] = variants[k][m].trim();
+                }
+                combinations *= variants[k].length;
+            }
+            for (int combination = 0; combination < combinations; combination++) {
+                List<String[]> job = new ArrayList<String[]>();
+                int rest = combination;
+                for (int k = values.size() - 1; k >= 0; k--) {
+                    job.add(0, new String[] {values.get(k)[0], variants[k][rest % variants[k].length]});
+                    rest /= variants[k].length;
+                }
+                String name = sections.get(section) + (combinations > 1 ? "-" + (combination + 1) : "");
+                entries.add(new Entry(name, path, job));
+            }
+        }
+        return entries;
+    }
+
+    /* Задание */
+    // Модель настраивается при создании задания, ошибка
+    // в параметрах останавливает программу до начала расчета.
+    static Job job(Entry entry, Path directory, int threads) throws IOException {
+        String model = entry.get("model");
+        if (model == null) {
+            throw new IOException(entry.name + ": не задана модель (model)");
+        }
+        boolean output = entry.get("output") != null;
+        try {
+            switch (model.toLowerCase(Locale.ROOT)) {
+                case "percolation": {
+                    final PercolationModel percolation = new PercolationModel()
+                            .setName(entry.name)
+                            .setThreads(threads)
+                            .setStatistics(false, directory.resolve(entry.name + "-clusters.txt").toString());
+                    apply(entry, percolation, null, null);
+                    return new Job(entry.name, "percolation", directory) {
+                        @Override
+                        String run(PrintStream out) throws IOException {
+                            printHeader(percolation, out);
+                            PercolationModel.Result result = percolation.run();
+                            result.print(out);
+                            return String.format(Locale.ROOT, "points=%d trials=%d threshold=%.5f", result.size(),
+                                    result.trials(), result.threshold());
+                        }
+                    };
+                }
+                case "diffusion": {
+                    String file = entry.get("scenario");
+                    Path parent = entry.manifest.toAbsolutePath().getParent();
+                    final Scenario scenario = file == null ? new Scenario() : Scenario.load(parent.resolve(file));
+                    scenario.setName(entry.name).setThreads(threads);
+                    apply(entry, null, scenario, null);
+                    if (!output) {
+                        String extension = scenario.format() == SnapshotWriter.Format.TEXT ? ".txt" : ".bin";
+                        scenario.setOutput(directory.resolve(entry.name + "-field" + extension).toString());
+                    }
+                    return new Job(entry.name, "diffusion", directory) {
+                        @Override
+                        String run(PrintStream out) throws IOException {
+                            Diffusion.Result result = Diffusion.solve(scenario);
+                            result.print(out);
+                            return String.format(Locale.ROOT, "steps=%d steady=%b cycles=%d max=%.6e",
+                                    result.steps(), result.steady(), result.cycles(), result.max());
+                        }
+                    };
+                }
+                case "image": {
+                    final PercolationImageModel image = new PercolationImageModel()
+                            .setOutput(directory.resolve(entry.name + ".png").toString());
+                    apply(entry, null, null, image);
+                    return new Job(entry.name, "image", directory) {
+                        @Override
+                        String run(PrintStream out) throws IOException {
+                            PercolationImageModel.Result result = image.render();
+                            result.print(out);
+                            return String.format(Locale.ROOT, "spans=%b clusters=%d largest=%d", result.spans(),
+                                    result.count(), result.largest());
+                        }
+                    };
+                }
+                default:
+                    throw new IllegalArgumentException("Неизвестная модель: " + model);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException(entry.manifest + ": задание " + entry.name + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Передача ключей задания модели (задана одна из трех).
+    private static void apply(Entry entry, PercolationModel percolation, Scenario scenario,
+            PercolationImageModel image) {
+        for (String[] pair : entry.values) {
+            if (pair[0].equals("model") || pair[0].equals("scenario")) {
+                continue;
+            }
+            if (percolation != null) {
+                percolation.set(pair[0], pair[1]);
+            } else if (scenario != null) {
+                scenario.set(pair[0], pair[1]);
+            } else {
+                image.set(pair[0], pair[1]);
+            }
+        }
+    }
+
+    // Общие сведения, как в программе Percolation.
+    private static void printHeader(PercolationModel model, PrintStream out) {
+        out.println("Задание: " + model.name());
+        out.println("Решетка: " + model.heightGrid() + " х " + model.widthGrid()
+                + (model.depthGrid() > 1 ? " х " + model.depthGrid() : ""));
+        out.println("Генератор решетки: " + model.generator());
+        out.println("Метод расчета: " + model.method().name().toLowerCase(Locale.ROOT));
+        out.println("Количество итераций: " + model.n());
+    }
+
+    /* Выполняемое задание */
+    abstract static class Job {
+
+        private final String name;
+        private final String model;
+        private final Path report;
+
+        // Результат выполнения.
+        private double seconds;
+        private String summary;
+        private String error;
+
+        Job(String name, String model, Path directory) {
+            this.name = name;
+            this.model = model;
+            this.report = directory.resolve(name + ".txt");
+        }
+
+        // Расчет с выводом отчета в out, возвращает краткий результат.
+        abstract String run(PrintStream out) throws IOException;
+
+        // Ошибка записывается в отчет и в сводку.
+        void execute() {
+            long start = System.nanoTime();
+            PrintStream out = null;
+            try {
+                OutputStream stream = Files.newOutputStream(report);
+                out = new PrintStream(stream, false, "UTF-8");
+                summary = run(out);
+            } catch (Exception e) {
+                error = e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : "");
+                if (out != null) {
+                    e.printStackTrace(out);
+                }
+            } finally {
+                if (out != null) {
+                    out.close();
+                }
+            }
+            seconds = (System.nanoTime() - start) / 1e9;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Blocks
+ *
+ * Рекурсивное деление диапазона независимых блоков работы между потоками пула ForkJoin. Используется для блоков
+ * итераций метода Монте-Карло и для полос строк сетки при решении уравнения диффузии.
+ *
+ * @author Artur Manukian
+ */
+
+public final class Blocks extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /* Блок работы */
+    public interface Block {
+        void run(int index);
+    }
+
+    private final Block block;
+    private final int from;
+    private final int to;
+
+    public Blocks(Block block, int from, int to) {
+        this.block = block;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= 1) {
+            for (int index = from; index < to; index++) {
+                block.run(index);
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new Blocks(block, from, middle), new Blocks(block, middle, to));
+    }
+}
\ No newline at end of file
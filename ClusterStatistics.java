@@ -0,0 +1,273 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * ClusterStatistics
+ *
+ * Статистика кластеров по итерациям метода Монте-Карло для одного значения p: распределение кластеров по размерам,
+ * средний размер кластера, сила стягивающего кластера P∞ и радиус инерции. Кластеры размечаются алгоритмом
+ * Хошена-Копельмана (SpanningCluster.label), после чего один проход по меткам дает размер, центр и момент инерции
+ * каждого кластера.
+ *
+ * Размеры группируются в логарифмические интервалы [2^b, 2^(b+1)), поэтому объем статистики не зависит от размера
+ * решетки. Стягивающий кластер в распределение не входит и учитывается только в P∞ - доле всех узлов решетки,
+ * принадлежащих ему. По конечным кластерам рассчитываются:
+ *   средний размер кластера S = sum(s^2 n_s) / sum(s n_s);
+ *   длина корреляции xi^2 = 2 sum(R_s^2 s^2 n_s) / sum(s^2 n_s), где R_s - радиус инерции кластера размера s.
+ * На решетке с периодическими границами радиус инерции рассчитывается в координатах решетки, поэтому для кластеров,
+ * пересекающих границу, он завышен.
+ *
+ * Накопитель не потокобезопасен: каждый поток заполняет свой, а накопители потоков объединяются методом merge.
+ * Целочисленные величины (количество итераций и кластеров, размеры) не зависят от порядка объединения; суммы для P∞ и
+ * радиуса инерции могут отличаться в последних знаках при разном количестве потоков.
+ *
+ * @author Artur Manukian
+ */
+
+public class ClusterStatistics {
+
+    // Количество логарифмических интервалов размеров.
+    private static final int BINS = 32;
+
+    private final int heightGrid;
+    private final int widthGrid;
+    private final int depthGrid;
+    private final long sites;
+
+    private long trials;
+    private long spanningTrials;
+    // Суммы P∞ и P∞^2 по итерациям.
+    private double strength;
+    private double strengthSquares;
+
+    // По интервалам размеров: количество кластеров, сумма размеров,
+    // сумма квадратов размеров, сумма R_s^2 и сумма R_s^2 s^2.
+    private final long[] clusters = new long[BINS];
+    private final long[] clusterSites = new long[BINS];
+    private final double[] squares = new double[BINS];
+    private final double[] gyration = new double[BINS];
+    private final double[] moments = new double[BINS];
+
+    // Суммы координат и квадратов расстояний от начала решетки
+    // по меткам кластеров текущей итерации. Не объединяются.
+    private double[] sumI = new double[0];
+    private double[] sumJ = new double[0];
+    private double[] sumK = new double[0];
+    private double[] sumR2 = new double[0];
+
+    public ClusterStatistics(int heightGrid, int widthGrid, int depthGrid) {
+        this.heightGrid = heightGrid;
+        this.widthGrid = widthGrid;
+        this.depthGrid = depthGrid;
+        this.sites = (long) heightGrid * widthGrid * depthGrid;
+    }
+
+    public ClusterStatistics(int heightGrid, int widthGrid) {
+        this(heightGrid, widthGrid, 1);
+    }
+
+    /* Учет размеченной решетки */
+    public void add(SpanningCluster.Clusters labelled) {
+        int count = labelled.count();
+        if (sumI.length < count + 1) {
+            int length = Math.max(count + 1, sumI.length * 2);
+            sumI = new double[length];
+            sumJ = new double[length];
+            sumK = new double[length];
+            sumR2 = new double[length];
+        } else {
+            Arrays.fill(sumI, 0, count + 1, 0);
+            Arrays.fill(sumJ, 0, count + 1, 0);
+            Arrays.fill(sumK, 0, count + 1, 0);
+            Arrays.fill(sumR2, 0, count + 1, 0);
+        }
+
+        // Один проход по меткам в порядке их хранения.
+        for (int k = 1; k < depthGrid + 1; k++) {
+            for (int i = 1; i < heightGrid + 1; i++) {
+                for (int j = 1; j < widthGrid + 1; j++) {
+                    int label = labelled.labelAt(i, j, k);
+                    if (label != 0) {
+                        sumI[label] += i;
+                        sumJ[label] += j;
+                        sumK[label] += k;
+                        sumR2[label] += (double) i * i + (double) j * j + (double) k * k;
+                    }
+                }
+            }
+        }
+
+        int spanningLabel = labelled.spanningLabel();
+        for (int label = 1; label < count + 1; label++) {
+            if (label == spanningLabel) {
+                continue;
+            }
+            int s = labelled.size(label);
+            double ci = sumI[label] / s;
+            double cj = sumJ[label] / s;
+            double ck = sumK[label] / s;
+            // Округление может дать малое отрицательное значение.
+            double r2 = Math.max(0, sumR2[label] / s - ci * ci - cj * cj - ck * ck);
+            int bin = 31 - Integer.numberOfLeadingZeros(s);
+            clusters[bin]++;
+            clusterSites[bin] += s;
+            squares[bin] += (double) s * s;
+            gyration[bin] += r2;
+            moments[bin] += r2 * s * s;
+        }
+
+        trials++;
+        if (spanningLabel != 0) {
+            double value = (double) labelled.size(spanningLabel) / sites;
+            spanningTrials++;
+            strength += value;
+            strengthSquares += value * value;
+        }
+    }
+
+    /* Объединение с накопителем другого потока */
+    public ClusterStatistics merge(ClusterStatistics other) {
+        if (other.heightGrid != heightGrid || other.widthGrid != widthGrid || other.depthGrid != depthGrid) {
+            throw new IllegalArgumentException("Статистика относится к решетке другого размера");
+        }
+        trials += other.trials;
+        spanningTrials += other.spanningTrials;
+        strength += other.strength;
+        strengthSquares += other.strengthSquares;
+        for (int bin = 0; bin < BINS; bin++) {
+            clusters[bin] += other.clusters[bin];
+            clusterSites[bin] += other.clusterSites[bin];
+            squares[bin] += other.squares[bin];
+            gyration[bin] += other.gyration[bin];
+            moments[bin] += other.moments[bin];
+        }
+        return this;
+    }
+
+    public long trials() {
+        return trials;
+    }
+
+    public long spanningTrials() {
+        return spanningTrials;
+    }
+
+    // Вероятность образования стягивающего кластера.
+    public double pc() {
+        return (double) spanningTrials / trials;
+    }
+
+    // Средняя сила стягивающего кластера P∞ (0 в итерациях без него).
+    public double strength() {
+        return strength / trials;
+    }
+
+    // Стандартная ошибка средней P∞.
+    public double strengthError() {
+        if (trials < 2) {
+            return Double.NaN;
+        }
+        double mean = strength();
+        double variance = (strengthSquares / trials - mean * mean) * trials / (trials - 1);
+        return Math.sqrt(Math.max(0, variance) / trials);
+    }
+
+    // Средний размер конечного кластера S.
+    public double meanClusterSize() {
+        double numerator = 0;
+        double denominator = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            numerator += squares[bin];
+            denominator += clusterSites[bin];
+        }
+        return numerator / denominator;
+    }
+
+    // Длина корреляции xi по конечным кластерам, в узлах решетки.
+    public double correlationLength() {
+        double numerator = 0;
+        double denominator = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            numerator += moments[bin];
+            denominator += squares[bin];
+        }
+        return Math.sqrt(2 * numerator / denominator);
+    }
+
+    /* Распределение по размерам */
+    // Количество интервалов до последнего непустого включительно.
+    public int bins() {
+        int bins = BINS;
+        while (bins > 0 && clusters[bins - 1] == 0) {
+            bins--;
+        }
+        return bins;
+    }
+
+    // Наименьший размер интервала bin.
+    public static long binStart(int bin) {
+        return 1L << bin;
+    }
+
+    public long clusters(int bin) {
+        return clusters[bin];
+    }
+
+    // Количество кластеров одного размера на узел решетки n_s,
+    // среднее по размерам интервала и по итерациям.
+    public double density(int bin) {
+        return clusters[bin] / ((double) trials * sites * binStart(bin));
+    }
+
+    // Средний радиус инерции кластеров интервала (корень из среднего R_s^2).
+    public double gyrationRadius(int bin) {
+        return clusters[bin] > 0 ? Math.sqrt(gyration[bin] / clusters[bin]) : Double.NaN;
+    }
+
+    /* Запись в файл */
+    // Для каждого p: строка итогов и таблица распределения
+    // по интервалам размеров. Строки с # - заголовки.
+    public static void write(Path path, double[] p, ClusterStatistics[] statistics) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        Formatter formatter = new Formatter(writer, Locale.ROOT);
+        try {
+            formatter.format("# p\ttrials\tPc\tPinf\tPinf_error\tS\txi%n");
+            for (int k = 0; k < p.length; k++) {
+                ClusterStatistics s = statistics[k];
+                formatter.format("%.4f\t%d\t%.6f\t%.6e\t%.3e\t%.6e\t%.6e%n", p[k], s.trials(), s.pc(), s.strength(),
+                        s.strengthError(), s.meanClusterSize(), s.correlationLength());
+            }
+            formatter.format("%n# p\ts_from\ts_to\tclusters\tn_s\tR_s%n");
+            for (int k = 0; k < p.length; k++) {
+                ClusterStatistics s = statistics[k];
+                for (int bin = 0; bin < s.bins(); bin++) {
+                    formatter.format("%.4f\t%d\t%d\t%d\t%.6e\t%.6e%n", p[k], binStart(bin), binStart(bin + 1) - 1,
+                            s.clusters(bin), s.density(bin), s.gyrationRadius(bin));
+                }
+            }
+        } finally {
+            formatter.close();
+        }
+        if (formatter.ioException() != null) {
+            throw formatter.ioException();
+        }
+    }
+
+    public int heightGrid() {
+        return heightGrid;
+    }
+
+    public int widthGrid() {
+        return widthGrid;
+    }
+
+    public int depthGrid() {
+        return depthGrid;
+    }
+}
\ No newline at end of file
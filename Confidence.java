@@ -0,0 +1,119 @@
+/**
+ * Confidence
+ *
+ * Доверительные интервалы для вероятности образования стягивающего кластера, оцененной по доле успешных итераций
+ * метода Монте-Карло. Интервал Вильсона, в отличие от нормального приближения, не выходит за пределы [0, 1] и
+ * остается корректным при Pc, близкой к 0 или 1. Интервал Клоппера-Пирсона точный (строится по биномиальному
+ * распределению) и консервативный: его уровень доверия не ниже заданного при любом количестве итераций.
+ *
+ * @author Artur Manukian
+ */
+
+public class Confidence {
+
+    // Квантиль нормального распределения для уровня доверия 95%.
+    public static final double Z95 = 1.959963984540054;
+
+    private Confidence() {
+    }
+
+    /* Интервал Вильсона */
+    // Возвращает нижнюю и верхнюю границы интервала для доли
+    // successes из trials при квантиле z.
+    public static double[] wilson(long successes, long trials, double z) {
+        if (trials == 0) {
+            return new double[] {0, 1};
+        }
+        double ratio = (double) successes / trials;
+        double z2 = z * z / trials;
+        double center = (ratio + z2 / 2) / (1 + z2);
+        double half = z * Math.sqrt(ratio * (1 - ratio) / trials + z2 / (4 * trials)) / (1 + z2);
+        return new double[] {Math.max(0, center - half), Math.min(1, center + half)};
+    }
+
+    /* Интервал Клоппера-Пирсона */
+    // Границы - квантили бета-распределения: нижняя alpha / 2 для
+    // B(successes, trials - successes + 1), верхняя 1 - alpha / 2
+    // для B(successes + 1, trials - successes).
+    public static double[] clopperPearson(long successes, long trials, double alpha) {
+        if (trials == 0) {
+            return new double[] {0, 1};
+        }
+        double lower = successes == 0 ? 0 : betaQuantile(alpha / 2, successes, trials - successes + 1);
+        double upper = successes == trials ? 1 : betaQuantile(1 - alpha / 2, successes + 1, trials - successes);
+        return new double[] {lower, upper};
+    }
+
+    // Квантиль бета-распределения делением отрезка пополам.
+    private static double betaQuantile(double probability, double a, double b) {
+        double low = 0;
+        double high = 1;
+        for (int k = 0; k < 100 && high - low > 1e-15; k++) {
+            double middle = (low + high) / 2;
+            if (regularizedBeta(middle, a, b) < probability) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    // Регуляризованная неполная бета-функция I_x(a, b),
+    // цепная дробь Лентца (Numerical Recipes, betacf).
+    private static double regularizedBeta(double x, double a, double b) {
+        if (x <= 0) {
+            return 0;
+        }
+        if (x >= 1) {
+            return 1;
+        }
+        double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log1p(-x));
+        if (x > (a + 1) / (a + b + 2)) {
+            return 1 - front * continuedFraction(1 - x, b, a) / b;
+        }
+        return front * continuedFraction(x, a, b) / a;
+    }
+
+    private static double continuedFraction(double x, double a, double b) {
+        final double tiny = 1e-300;
+        double c = 1;
+        double d = 1 - (a + b) * x / (a + 1);
+        d = 1 / (Math.abs(d) < tiny ? tiny : d);
+        double result = d;
+        for (int m = 1; m <= 10000; m++) {
+            int m2 = 2 * m;
+            double term = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+            d = 1 + term * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + term / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            result *= d * c;
+            term = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+            d = 1 + term * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + term / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            double delta = d * c;
+            result *= delta;
+            if (Math.abs(delta - 1) < 1e-15) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // Логарифм гамма-функции (приближение Ланцоша).
+    private static double logGamma(double x) {
+        double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091, -1.231739572450155,
+                0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x;
+        double tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double series = 1.000000000190015;
+        for (double coefficient : coefficients) {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+}
\ No newline at end of file
@@ -1,7 +1,6 @@
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.util.Locale;
 
 /**
@@ -9,25 +8,45 @@ import java.util.Locale;
  *
  * Программа представляет собой решение задачи диффузии загрязнений в атмосфере методом конечных разностей (явная схема)
  * для двумерной области решений, используя уравнение теплопроводности c добавлением слогаемого Q (источник загрязнения).
- * Результатом программы является .txt файл со значениями концентраций загрязнений в точках двумерного массива.
+ * Результатом программы является файл со значениями концентраций загрязнений в точках двумерного массива (текстовый
+ * или двоичный, см. SnapshotWriter), путь к которому задается сценарием.
  *
- * В закоментированной части программы содержатся переменные и решение для двух источников Q. Принципиально ничем
- * не отличается от решения с одним источником.
+ * Параметры расчета и источники задаются сценарием (Scenario). Без аргументов рассчитывается сценарий с одним
+ * источником, иначе каждый аргумент - файл сценария, и все сценарии рассчитываются подряд. Пример с двумя
+ * источниками находится в scenarios/chimneys.txt.
+ *
+ * Расчет временных слоев выполняет DiffusionSolver. Если в сценарии задан допуск tolerance, расчет останавливается
+ * раньше n шагов, как только поле перестает изменяться; при multigrid = true стационарное поле рассчитывается сразу
+ * многосеточным методом.
+ *
+ * При depthGrid > 1 область решений трехмерная: временные слои рассчитывает DiffusionSolver3D (явная схема, значения
+ * float), а источники задаются с координатой z.
+ *
+ * Метод solve рассчитывает сценарий без вывода в консоль и возвращает результат (Result) с последним временным слоем,
+ * поэтому расчет можно вызывать из других программ, например из пакетного запуска Batch.
  *
  * @author Artur Manukian
  */
 
 public class Diffusion {
 
-    public static void main(String[] args) throws FileNotFoundException {
+    // Наибольший размер сетки для вывода в консоль.
+    private static final int PRINT_LIMIT = 50;
+
+    public static void main(String[] args) throws IOException {
+
+        /* Сценарии из файлов */
+        if (args.length > 0) {
+            for (String file : args) {
+                run(Scenario.load(Paths.get(file)));
+            }
+            return;
+        }
 
         /* Переменные */
-        int i, j; // x и y сетки.
         int sizeGrid = 40; // Размер сетки.
         int n = 100; // Количество итераций.
         double t = 0; // Граничное условие первого рода (температура).
-        double [][] T = new double[sizeGrid][sizeGrid]; // Временной слой.
-        double [][] newT = new double[sizeGrid][sizeGrid]; // Новый временной слой.
 
         // Значения
         // lambda - теплопроводность,
@@ -39,140 +58,290 @@ public class Diffusion {
         double ro = 1.165;
         double c = 1005;
         double tau = 0.01;
-        double h; // Шаг по сетке.
-        double stability; // Условие устойчивости схемы.
+
+        // Разностная схема. Схема ADI устойчива при любом tau,
+        // поэтому для нее шаг по сетке задается независимо.
+        DiffusionSolver.Scheme scheme = DiffusionSolver.Scheme.EXPLICIT;
+        double hImplicit = 0.0015;
+
+        // Файл результата и его формат. Двоичные форматы
+        // float64 и float32 записываются быстрее текстового.
+        String output = "DiffusionData.txt";
+        SnapshotWriter.Format format = SnapshotWriter.Format.TEXT;
 
         // Концентрация и координаты
         // для одного источника.
-        double firstPointConcentration, secondPointConcentration, thirdPointConcentration;
         int xChimney = 20;
         int yChimney = 20;
         double Q = 2;
 
-        // Концентрация и координаты
-        // для двух источников.
-        /*double conc;
-        int xChimney1 = 15;
-        int yChimney1 = 20;
-        int xChimney2 = 25;
-        int yChimney2 = 20;
-        double Q1 = 1;
-        double Q2 = 0.01;*/
+        Scenario scenario = new Scenario()
+                .setName("chimney")
+                .setSizeGrid(sizeGrid)
+                .setN(n)
+                .setLambda(lambda)
+                .setRo(ro)
+                .setC(c)
+                .setTau(tau)
+                .setScheme(scheme)
+                .setBoundary(DiffusionSolver.Boundary.DIRICHLET, t)
+                .setOutput(output)
+                .setFormat(format)
+                .addSource(yChimney, xChimney, Q);
+        if (scheme == DiffusionSolver.Scheme.ADI) {
+            scenario.setH(hImplicit);
+        }
+        run(scenario);
+    }
+
+    /* Расчет одного сценария */
+    // Результат выводится в консоль.
+    static void run(Scenario scenario) throws IOException {
+        solve(scenario).print(System.out);
+    }
+
+    /* Расчет сценария без вывода в консоль */
+    // Поле последнего временного слоя возвращается в результате,
+    // все записанные слои - в файле scenario.output().
+    public static Result solve(Scenario scenario) throws IOException {
+        if (scenario.depthGrid() > 1) {
+            return solve3D(scenario);
+        }
+        int sizeGrid = scenario.sizeGrid();
 
         /* Выполнение условия устойчивости */
         // Подбор значения h таким образом, чтобы условие устойчивости
-        // stability было больше tau с условно минимальной разницей.
-        for (stability = 0, h = 0; tau >= stability; h += 0.0005) {
-            stability = (ro * c * Math.pow(h, 2)) / (2 * lambda);
+        // stability было больше tau с условно минимальной разницей,
+        // если шаг по сетке не задан в сценарии.
+        double h = scenario.gridStep();
+        double stability = scenario.stability(h);
+
+        /* Сетка с граничными условиями */
+        // Временные слои хранятся в плоских массивах,
+        // строки сетки рассчитываются параллельно.
+        DiffusionSolver solver = new DiffusionSolver(scenario, scenario.threads());
+
+        /* Уравнение диффузии */
+        // Каждый snapshot-ый временной слой (и последний) записывается
+        // в файл в отдельном потоке, не останавливая расчет.
+        // При заданном допуске изменение поля измеряется на каждом
+        // check-том шаге, и расчет останавливается, когда оно
+        // становится меньше tolerance от наибольшего значения поля.
+        int n = scenario.n();
+        int snapshot = scenario.snapshot();
+        double tolerance = scenario.tolerance();
+        boolean steady = false;
+        int cycles = 0;
+        // Пул потоков решателя останавливается и тогда,
+        // когда файл результата не удалось открыть.
+        try {
+            SnapshotWriter writer = new SnapshotWriter(Paths.get(scenario.output()), scenario.format(), sizeGrid);
+            try {
+                if (scenario.multigrid()) {
+                    // Стационарное поле записывается как слой с номером 0
+                    // и бесконечным временем.
+                    cycles = solver.solveSteady(tolerance > 0 ? tolerance : 1e-10);
+                    writer.write(0, Double.POSITIVE_INFINITY, solver.field());
+                } else {
+                    for (int counter = 1; counter <= n && !steady; counter++) {
+                        boolean measure = tolerance > 0 && counter % scenario.check() == 0;
+                        solver.step(measure);
+                        steady = measure && solver.relativeChange() <= tolerance;
+                        if (counter == n || steady || (snapshot > 0 && counter % snapshot == 0)) {
+                            writer.write(counter, counter * scenario.tau(), solver.field());
+                        }
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        } finally {
+            solver.shutdown();
         }
+        return new Result(scenario, h, stability, solver.steps(), steady, cycles, solver.maxChange(),
+                solver.rmsChange(), solver.field(), null);
+    }
 
-        /* Заполнение сетки нулевыми значениями */
-        for (i = 0; i < sizeGrid; i++) {
-            for (j = 0; j < sizeGrid; j++) {
-                T[i][j] = 0;
+    /* Расчет сценария на трехмерной сетке */
+    // Многосеточный метод для трехмерной сетки не реализован.
+    private static Result solve3D(Scenario scenario) throws IOException {
+        if (scenario.multigrid()) {
+            throw new IllegalArgumentException("Многосеточный метод для трехмерной сетки не реализован");
+        }
+        int sizeGrid = scenario.sizeGrid();
+        double h = scenario.gridStep();
+        double stability = scenario.stability(h);
+        DiffusionSolver3D solver = new DiffusionSolver3D(scenario, scenario.threads());
+
+        int n = scenario.n();
+        int snapshot = scenario.snapshot();
+        double tolerance = scenario.tolerance();
+        boolean steady = false;
+        try {
+            SnapshotWriter writer = new SnapshotWriter(Paths.get(scenario.output()), scenario.format(), sizeGrid,
+                    scenario.depthGrid());
+            try {
+                for (int counter = 1; counter <= n && !steady; counter++) {
+                    boolean measure = tolerance > 0 && counter % scenario.check() == 0;
+                    solver.step(measure);
+                    steady = measure && solver.relativeChange() <= tolerance;
+                    if (counter == n || steady || (snapshot > 0 && counter % snapshot == 0)) {
+                        writer.write(counter, counter * scenario.tau(), solver.field());
+                    }
+                }
+            } finally {
+                writer.close();
             }
+        } finally {
+            solver.shutdown();
+        }
+        return new Result(scenario, h, stability, solver.steps(), steady, 0, solver.maxChange(), solver.rmsChange(),
+                null, solver.field());
+    }
+
+    /* Результат расчета сценария */
+    public static final class Result {
+
+        private final Scenario scenario;
+        private final double h;
+        private final double stability;
+        private final int steps;
+        private final boolean steady;
+        private final int cycles;
+        private final double maxChange;
+        private final double rmsChange;
+        // Последний временной слой: field для двумерной сетки,
+        // field3D для трехмерной (без копирования из решателя).
+        private final double[] field;
+        private final float[] field3D;
+
+        Result(Scenario scenario, double h, double stability, int steps, boolean steady, int cycles, double maxChange,
+                double rmsChange, double[] field, float[] field3D) {
+            this.scenario = scenario;
+            this.h = h;
+            this.stability = stability;
+            this.steps = steps;
+            this.steady = steady;
+            this.cycles = cycles;
+            this.maxChange = maxChange;
+            this.rmsChange = rmsChange;
+            this.field = field;
+            this.field3D = field3D;
         }
 
-        /* Граничные условия */
-        // Для левой и правой границы.
-        for (i = 0; i < sizeGrid; i++) {
-            T[i][0] = t; // Все i-тые элементы для нулевого j-того.
-            T[i][sizeGrid - 1] = t; // Все i-тые элементы для максимального j-того.
+        public Scenario scenario() {
+            return scenario;
         }
-        // Для верхней и нижней границы.
-        for (j = 0; j < sizeGrid; j++) {
-            T[0][j] = t; // Все j-тые элементы для нулевого i-того.
-            T[sizeGrid - 1][j] = t; // Все j-тые элементы для максимального i-того.
+
+        // Шаг по сетке, заданный или подобранный.
+        public double h() {
+            return h;
         }
 
-        /* Сетка с граничными условиями */
-        for (i = 0; i < sizeGrid; i++) {
-            for (j = 0; j < sizeGrid; j++) {
-                // Дублирование начальных значений для нового временного слоя.
-                newT[i][j] = T[i][j];
-            }
+        public double stability() {
+            return stability;
+        }
+
+        // Выполнено шагов по времени (0 для многосеточного метода).
+        public int steps() {
+            return steps;
+        }
+
+        // Расчет остановлен по допуску tolerance.
+        public boolean steady() {
+            return steady;
+        }
+
+        // Количество V-циклов многосеточного метода.
+        public int cycles() {
+            return cycles;
+        }
+
+        // Изменение поля на последнем измеренном шаге.
+        public double maxChange() {
+            return maxChange;
+        }
+
+        public double rmsChange() {
+            return rmsChange;
         }
 
-        /* Уравнение диффузии для одного источника */
-        for (int counter = 0; counter < n; counter++) {
-            for (i = 1; i < sizeGrid - 1; i++) {
-                for (j = 1; j < sizeGrid - 1; j++) {
-                    // Источник загрязнения.
-                    if (i == yChimney && j == xChimney){
-                        T[i][j] = newT[i][j] + ((lambda * tau) / (ro * c) * ((newT[i+1][j] + newT[i-1][j] + newT[i][j+1] + newT[i][j-1] - 4 * newT[i][j]) / Math.pow(h, 2))) + Q;
-                    } else {
-                        T[i][j] = newT[i][j] + ((lambda * tau) / (ro * c) * ((newT[i+1][j] + newT[i-1][j] + newT[i][j+1] + newT[i][j-1] - 4 * newT[i][j]) / Math.pow(h, 2)));
+        // Концентрация в узле (i, j) двумерной сетки.
+        public double get(int i, int j) {
+            return field[i * scenario.sizeGrid() + j];
+        }
+
+        // Концентрация в узле (i, j) слоя k трехмерной сетки.
+        public double get(int i, int j, int k) {
+            return field3D[(k * scenario.sizeGrid() + i) * scenario.sizeGrid() + j];
+        }
+
+        // Наибольшая концентрация во внутренних узлах сетки.
+        public double max() {
+            int size = scenario.sizeGrid();
+            int depth = scenario.depthGrid();
+            double max = 0;
+            for (int k = depth > 1 ? 1 : 0; k < (depth > 1 ? depth - 1 : 1); k++) {
+                for (int i = 1; i < size - 1; i++) {
+                    for (int j = 1; j < size - 1; j++) {
+                        max = Math.max(max, depth > 1 ? get(i, j, k) : get(i, j));
                     }
                 }
             }
-            // Перезапись на новый временной слой.
-            for (i = 1; i < sizeGrid - 1; i++) {
-                for (j = 1; j < sizeGrid - 1; j++) {
-                    newT[i][j] = T[i][j];
-                }
-            }
+            return max;
         }
 
-        // В закоментированной части программы содержится решение для двух источников Q.
-        // Принципиально ничем не отличается от решения с одним источником.
-
-        /* Уравнение диффузии для двух источников */
-        /*for (int counter = 0; counter < n; counter++) {
-            for (i = 1; i < size - 1; i++) {
-                for (j = 1; j < size - 1; j++) {
-                    // Источники загрязнения.
-                    if (i == yChimney1 && j == xChimney1){
-                        T[i][j] = newT[i][j] + ((lambda * tau) / (ro * c) * ((newT[i+1][j] + newT[i-1][j] + newT[i][j+1] + newT[i][j-1] - 4 * newT[i][j]) / Math.pow(h, 2))) + Q1;
-                    } else if (i == yChimney2 && j == xChimney2) {
-                        T[i][j] = newT[i][j] + ((lambda * tau) / (ro * c) * ((newT[i+1][j] + newT[i-1][j] + newT[i][j+1] + newT[i][j-1] - 4 * newT[i][j]) / Math.pow(h, 2))) + Q2;
-                    } else {
-                        T[i][j] = newT[i][j] + ((lambda * tau) / (ro * c) * ((newT[i+1][j] + newT[i-1][j] + newT[i][j+1] + newT[i][j-1] - 4 * newT[i][j]) / Math.pow(h, 2)));
+        /* Вывод результата */
+        public void print(PrintStream out) {
+            int sizeGrid = scenario.sizeGrid();
+            boolean grid3D = scenario.depthGrid() > 1;
+            out.println("Сценарий: " + scenario.name());
+
+            /* Вывод сетки */
+            // Необязательная функция, только для небольших двумерных сеток.
+            if (grid3D) {
+                out.println("Сетка: " + sizeGrid + " х " + sizeGrid + " х " + scenario.depthGrid());
+            } else if (sizeGrid <= PRINT_LIMIT) {
+                out.println("Сетка с источником загрязнения:");
+                for (int i = 1; i < sizeGrid - 1; i++) {
+                    for (int j = 1; j < sizeGrid - 1; j++) {
+                        out.print(String.format(Locale.ENGLISH, "%(.2f", get(i, j)) + " ");
                     }
+                    out.println();
                 }
+                out.println();
             }
-            // Перезапись на новый временной слой.
-            for (i = 1; i < size - 1; i++) {
-                for (j = 1; j < size - 1; j++) {
-                    newT[i][j] = T[i][j];
+
+            /* Снятие концентрации в точках */
+            // Точки находятся левее первого источника (на трехмерной
+            // сетке - в его слое z) на расстоянии 3, 6 и 9 узлов.
+            if (!scenario.sources().isEmpty()) {
+                Scenario.Source source = scenario.sources().get(0);
+                for (int point = 1; point <= 3; point++) {
+                    int x = source.x() - 3 * point;
+                    if (x >= 0) {
+                        double value = grid3D ? get(source.y(), x, source.z()) : get(source.y(), x);
+                        out.println("Концентрация в точке " + point + ": " + String.format("%(.3f", value));
+                    }
                 }
             }
-        }*/
-
-        /* Вывод сетки в консоль */
-        // Необязательная функция.
-        System.out.println("Сетка с источником загрязнения:");
-        for (i = 1; i < sizeGrid - 1; i++) {
-            for (j = 1; j < sizeGrid - 1; j++) {
-                System.out.print(String.format(Locale.ENGLISH, "%(.2f", newT[i][j]) + " ");
-            }
-            System.out.println();
-        }
-        System.out.println();
 
-        /* Вывод данных в файл */
-        PrintWriter outputToTxt = new PrintWriter(new OutputStreamWriter(new FileOutputStream("C:\\Users\\Artur\\Desktop\\DiffusionData.txt")), true);
-        for (i = 1; i < sizeGrid - 1; i++) {
-            for (j = 1; j < sizeGrid - 1; j++) {
-                outputToTxt.printf(String.format("%(.2f", newT[i][j])+" ");
+            if (scenario.multigrid()) {
+                out.println("\nСтационарное поле рассчитано многосеточным методом, V-циклов: " + cycles);
+            } else if (scenario.tolerance() > 0) {
+                String state = steady ? "Стационарное состояние достигнуто" : "Стационарное состояние не достигнуто";
+                out.println("\n" + state + ", шагов: " + steps + ", изменение за шаг: наибольшее "
+                        + String.format(Locale.ENGLISH, "%.3e", maxChange) + ", среднеквадратичное "
+                        + String.format(Locale.ENGLISH, "%.3e", rmsChange));
             }
-            outputToTxt.println();
-        }
-        outputToTxt.println();
 
-        /* Снятие концентрации в точках */
-        firstPointConcentration = T[yChimney][xChimney - 3];
-        secondPointConcentration = T[yChimney][xChimney - 6];
-        thirdPointConcentration = T[yChimney][xChimney - 9];
-
-        System.out.println("Концентрация в точке 1: " + String.format("%(.3f", firstPointConcentration));
-        System.out.println("Концентрация в точке 2: " + String.format("%(.3f", secondPointConcentration));
-        System.out.println("Концентрация в точке 3: " + String.format("%(.3f", thirdPointConcentration));
-
-        System.out.println("\nУсловие устойчивости схемы: " + String.format(Locale.ENGLISH, "%(.5f", stability));
-        System.out.println("lambda: " + lambda);
-        System.out.println("ro: " + ro);
-        System.out.println("c: " + c);
-        System.out.println("tau: " + tau);
-        System.out.println("h: " + h);
+            out.println("\nУсловие устойчивости схемы: " + String.format(Locale.ENGLISH, "%(.5f", stability));
+            out.println("lambda: " + scenario.lambda());
+            out.println("ro: " + scenario.ro());
+            out.println("c: " + scenario.c());
+            out.println("tau: " + scenario.tau());
+            out.println("h: " + h);
+            out.println("Результат: " + scenario.output());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,423 @@
+/**
+ * DiffusionSolver
+ *
+ * Решение уравнения диффузии загрязнений на квадратной сетке явной схемой или схемой Кранка-Николсон с расщеплением
+ * по направлениям (ADI, схема Писмена-Рэкфорда). Временные слои хранятся в плоских
+ * массивах (узел (i, j) по индексу i * sizeGrid + j), коэффициент схемы lambda * tau / (ro * c * h^2) вычисляется один
+ * раз, источники загрязнения добавляются отдельным шагом только в свои узлы, а новый и старый временные слои
+ * меняются местами без копирования.
+ *
+ * Параметры расчета, граничные условия и источники задаются сценарием (Scenario). Источники хранятся в разреженном
+ * индексе (SourceIndex) и на каждом шаге обходятся за O(количество источников).
+ *
+ * Явная схема устойчива только при lambda * tau / (ro * c * h^2) <= 1/4, то есть при tau <= ro * c * h^2 / (4 *
+ * lambda) (Scenario.stability), и конструктор отклоняет неустойчивый сценарий. Схема ADI устойчива при любом шаге по
+ * времени: каждый шаг состоит из двух полушагов, неявных по j и по i соответственно, а трехдиагональные системы
+ * решаются методом прогонки (Tridiagonal).
+ *
+ * Строки (или столбцы) сетки делятся на полосы (Bands), которые обрабатываются параллельно в пуле ForkJoin.
+ * Внутренние циклы по j написаны без ветвлений и вызовов, чтобы JIT-компилятор мог векторизовать их.
+ *
+ * По запросу шаг измеряет изменение поля между временными слоями (наибольшее и среднеквадратичное), что позволяет
+ * остановить расчет при достижении стационарного состояния. Изменение считается отдельным проходом, поэтому
+ * измерять его имеет смысл не на каждом шаге. Стационарное поле можно также получить сразу, без шагов по времени,
+ * решив уравнение Пуассона многосеточным методом (Multigrid).
+ *
+ * @author Artur Manukian
+ */
+
+public class DiffusionSolver {
+
+    /* Разностная схема */
+    public enum Scheme {
+        EXPLICIT, // Явная схема.
+        ADI // Схема Кранка-Николсон с расщеплением по направлениям.
+    }
+
+    /* Граничные условия */
+    public enum Boundary {
+        DIRICHLET, // Первого рода: заданное значение t на границе.
+        NEUMANN // Второго рода: нулевой поток через границу.
+    }
+
+    // Минимальное количество строк в полосе.
+    private static final int MIN_BAND = 16;
+
+    private final Scheme scheme;
+    private final Boundary boundary;
+    // Значение на границе для условий первого рода.
+    private final double t;
+    private final int sizeGrid;
+    // Коэффициент схемы lambda * tau / (ro * c * h^2).
+    private final double coefficient;
+
+    // Текущий и новый временные слои.
+    private double[] T;
+    private double[] newT;
+
+    // Источники загрязнения: упорядоченные индексы узлов и значения Q.
+    // На каждом шаге обходятся только эти узлы.
+    private final SourceIndex sources = new SourceIndex();
+    private int[] sourceIndex;
+    private double[] sourceValue;
+
+    // Прогонка для полушагов схемы ADI.
+    private final Tridiagonal tridiagonal;
+
+    // Полосы строк и изменение поля за шаг.
+    private final Bands bands;
+    private int steps;
+
+    // Для схемы ADI предыдущий слой копируется в previous
+    // при измерении изменения, поскольку шаг перезаписывает его.
+    private double[] previous;
+
+    public DiffusionSolver(Scenario scenario, int threads) {
+        int sizeGrid = scenario.sizeGrid();
+        if (sizeGrid < 3) {
+            throw new IllegalArgumentException("Размер сетки должен быть не меньше 3: " + sizeGrid);
+        }
+        double h = scenario.gridStep();
+        this.scheme = scenario.scheme();
+        this.boundary = scenario.boundary();
+        this.t = scenario.t();
+        this.sizeGrid = sizeGrid;
+        this.coefficient = (scenario.lambda() * scenario.tau()) / (scenario.ro() * scenario.c()) / (h * h);
+        if (scheme == Scheme.EXPLICIT && coefficient > 1.0 / 4) {
+            throw new IllegalArgumentException("Явная схема неустойчива: lambda * tau / (ro * c * h^2) = "
+                    + coefficient + " > 1/4");
+        }
+        // Полушаг: -r/2 * T[k-1] + (1 + r) * T[k] - r/2 * T[k+1].
+        // При нулевом потоке T[0] = T[1], поэтому в первом и последнем
+        // уравнениях на диагонали стоит 1 + r/2.
+        double half = coefficient / 2;
+        double edge = boundary == Boundary.NEUMANN ? 1 + half : 1 + coefficient;
+        this.tridiagonal = scheme == Scheme.ADI
+                ? new Tridiagonal(-half, 1 + coefficient, -half, sizeGrid - 2, edge, edge) : null;
+        this.T = new double[sizeGrid * sizeGrid];
+        this.newT = new double[sizeGrid * sizeGrid];
+        this.bands = new Bands(sizeGrid - 2, MIN_BAND, threads);
+
+        // Граничные условия первого рода одинаковы
+        // для обоих слоев и не изменяются при расчете.
+        if (boundary == Boundary.DIRICHLET) {
+            for (int k = 0; k < sizeGrid; k++) {
+                setBoundary(k, t);
+            }
+        }
+
+        // Источники сценария собираются в разреженный индекс,
+        // значения источников в одном узле складываются.
+        for (Scenario.Source source : scenario.sources()) {
+            for (int y = source.y(); y < source.y() + source.height(); y++) {
+                for (int x = source.x(); x < source.x() + source.width(); x++) {
+                    sources.add(checkedIndex(y, x), source.q());
+                }
+            }
+        }
+        sourceIndex = sources.indices();
+        sourceValue = sources.values();
+    }
+
+    public DiffusionSolver(Scenario scenario) {
+        this(scenario, Runtime.getRuntime().availableProcessors());
+    }
+
+    private void setBoundary(int k, double t) {
+        int last = sizeGrid - 1;
+        T[k] = newT[k] = t;
+        T[last * sizeGrid + k] = newT[last * sizeGrid + k] = t;
+        T[k * sizeGrid] = newT[k * sizeGrid] = t;
+        T[k * sizeGrid + last] = newT[k * sizeGrid + last] = t;
+    }
+
+    private int checkedIndex(int y, int x) {
+        if (y < 1 || y > sizeGrid - 2 || x < 1 || x > sizeGrid - 2) {
+            throw new IllegalArgumentException("Источник вне внутренней области сетки: (" + y + ", " + x + ")");
+        }
+        return y * sizeGrid + x;
+    }
+
+    /* Точечный источник загрязнения */
+    // Q добавляется в узел (y, x) на каждом шаге по времени.
+    public void addSource(int y, int x, double q) {
+        sources.add(checkedIndex(y, x), q);
+        sourceIndex = sources.indices();
+        sourceValue = sources.values();
+    }
+
+    /* Один шаг по времени */
+    public void step() {
+        step(false);
+    }
+
+    // measure - измерить изменение поля на этом шаге
+    // (maxChange, rmsChange, relativeChange).
+    public void step(boolean measure) {
+        if (scheme == Scheme.ADI) {
+            if (measure) {
+                if (previous == null) {
+                    previous = new double[T.length];
+                }
+                System.arraycopy(T, 0, previous, 0, T.length);
+            }
+            adiStep();
+            if (measure) {
+                measureChange(previous);
+            }
+        } else {
+            explicitStep();
+            // После перестановки слоев newT содержит предыдущий слой.
+            if (measure) {
+                measureChange(newT);
+            }
+        }
+        steps++;
+    }
+
+    /* Изменение поля за шаг */
+    private void measureChange(final double[] before) {
+        final double[] after = T;
+        final int size = sizeGrid;
+        final int rows = size - 2;
+        bands.run(new Blocks.Block() {
+            @Override
+            public void run(int band) {
+                double max = 0;
+                double squares = 0;
+                double value = 0;
+                for (int i = bands.from(band); i < bands.to(band); i++) {
+                    int row = i * size;
+                    for (int k = row + 1; k < row + size - 1; k++) {
+                        double change = after[k] - before[k];
+                        max = Math.max(max, Math.abs(change));
+                        squares += change * change;
+                        value = Math.max(value, Math.abs(after[k]));
+                    }
+                }
+                bands.setChange(band, max, squares, value);
+            }
+        });
+        bands.reduceChange((double) rows * rows);
+    }
+
+    /* Стационарное поле */
+    // Решение уравнения lambda / (ro * c) * ΔT + Q / tau = 0, к которому
+    // сходятся шаги по времени обеих схем: в единицах сетки это
+    // -ΔT = Q / coefficient. Решение записывается в текущий слой.
+    // tolerance - допустимая невязка относительно наибольшего Q.
+    // Возвращает количество V-циклов.
+    public int solveSteady(double tolerance) {
+        if (boundary == Boundary.NEUMANN) {
+            throw new IllegalStateException("При нулевом потоке через границу стационарного состояния нет");
+        }
+        int size = sizeGrid;
+        double[] f = new double[size * size];
+        for (int k = 0; k < sourceIndex.length; k++) {
+            f[sourceIndex[k]] = sourceValue[k] / coefficient;
+        }
+        double[] u = new double[size * size];
+        int cycles = new Multigrid(size).solve(u, f, tolerance, 100);
+        // Граничное значение t постоянно, поэтому решение
+        // с нулевой границей сдвигается на t.
+        for (int i = 1; i < size - 1; i++) {
+            for (int k = i * size + 1; k < i * size + size - 1; k++) {
+                T[k] = u[k] + t;
+            }
+        }
+        return cycles;
+    }
+
+    private void explicitStep() {
+        final double[] from = T;
+        final double[] to = newT;
+        bands.run(new Blocks.Block() {
+            @Override
+            public void run(int band) {
+                stencil(from, to, bands.from(band), bands.to(band));
+            }
+        });
+
+        // Источники загрязнения.
+        addSources(newT, 1);
+
+        // Перезапись на новый временной слой.
+        swap();
+        applyBoundary(T);
+    }
+
+    /* Шаг схемы ADI */
+    // Первый полушаг неявный по j: правая часть - явный оператор по i,
+    // затем прогонка вдоль каждой строки. Второй полушаг неявный по i:
+    // правая часть - явный оператор по j, затем прогонка вдоль столбцов,
+    // которые решаются полосами соседних столбцов одновременно.
+    // Источник добавляется по половине на каждом полушаге.
+    private void adiStep() {
+        final int size = sizeGrid;
+        final double half = coefficient / 2;
+
+        /* Первый полушаг */
+        final double[] from = T;
+        final double[] to = newT;
+        bands.run(new Blocks.Block() {
+            @Override
+            public void run(int band) {
+                halfStencil(from, to, bands.from(band), bands.to(band), size, half);
+            }
+        });
+        addSources(newT, 0.5);
+        bands.run(new Blocks.Block() {
+            @Override
+            public void run(int band) {
+                for (int i = bands.from(band); i < bands.to(band); i++) {
+                    int row = i * size;
+                    // Граничные значения первого рода
+                    // переносятся в правую часть.
+                    if (boundary == Boundary.DIRICHLET) {
+                        to[row + 1] += half * to[row];
+                        to[row + size - 2] += half * to[row + size - 1];
+                    }
+                    tridiagonal.solve(to, row + 1, 1, 1);
+                }
+            }
+        });
+        swap();
+
+        /* Второй полушаг */
+        applyBoundary(T);
+        final double[] middle = T;
+        final double[] result = newT;
+        bands.run(new Blocks.Block() {
+            @Override
+            public void run(int band) {
+                halfStencil(middle, result, bands.from(band), bands.to(band), 1, half);
+            }
+        });
+        addSources(newT, 0.5);
+        bands.run(new Blocks.Block() {
+            @Override
+            public void run(int band) {
+                int columnFrom = bands.from(band);
+                int columnTo = bands.to(band);
+                int first = size;
+                int last = (size - 2) * size;
+                if (boundary == Boundary.DIRICHLET) {
+                    for (int j = columnFrom; j < columnTo; j++) {
+                        result[first + j] += half * result[j];
+                        result[last + j] += half * result[last + size + j];
+                    }
+                }
+                tridiagonal.solve(result, first + columnFrom, size, columnTo - columnFrom);
+            }
+        });
+        swap();
+        applyBoundary(T);
+    }
+
+    /* Граничные условия второго рода */
+    // Значение на границе приравнивается соседнему внутреннему узлу,
+    // что соответствует нулевому потоку через границу. Граничные
+    // условия первого рода задаются один раз в конструкторе.
+    private void applyBoundary(double[] layer) {
+        if (boundary != Boundary.NEUMANN) {
+            return;
+        }
+        int size = sizeGrid;
+        int last = size - 1;
+        for (int k = 0; k < size; k++) {
+            layer[k] = layer[size + k];
+            layer[last * size + k] = layer[(last - 1) * size + k];
+        }
+        for (int k = 0; k < size; k++) {
+            layer[k * size] = layer[k * size + 1];
+            layer[k * size + last] = layer[k * size + last - 1];
+        }
+    }
+
+    private void addSources(double[] layer, double fraction) {
+        for (int k = 0; k < sourceIndex.length; k++) {
+            layer[sourceIndex[k]] += fraction * sourceValue[k];
+        }
+    }
+
+    private void swap() {
+        double[] swap = T;
+        T = newT;
+        newT = swap;
+    }
+
+    public void run(int n) {
+        for (int counter = 0; counter < n; counter++) {
+            step();
+        }
+    }
+
+    /* Пятиточечный шаблон для строк [rowFrom, rowTo) */
+    private void stencil(double[] from, double[] to, int rowFrom, int rowTo) {
+        int size = sizeGrid;
+        double a = coefficient;
+        for (int i = rowFrom; i < rowTo; i++) {
+            int row = i * size;
+            for (int k = row + 1; k < row + size - 1; k++) {
+                to[k] = from[k] + a * (from[k + size] + from[k - size] + from[k + 1] + from[k - 1] - 4 * from[k]);
+            }
+        }
+    }
+
+    /* Трехточечный шаблон в одном направлении для строк [rowFrom, rowTo) */
+    // offset = sizeGrid - направление i, offset = 1 - направление j.
+    private void halfStencil(double[] from, double[] to, int rowFrom, int rowTo, int offset, double half) {
+        int size = sizeGrid;
+        for (int i = rowFrom; i < rowTo; i++) {
+            int row = i * size;
+            for (int k = row + 1; k < row + size - 1; k++) {
+                to[k] = from[k] + half * (from[k + offset] + from[k - offset] - 2 * from[k]);
+            }
+        }
+    }
+
+    public void shutdown() {
+        bands.shutdown();
+    }
+
+    // Концентрация в узле (i, j) текущего временного слоя.
+    public double get(int i, int j) {
+        return T[i * sizeGrid + j];
+    }
+
+    // Текущий временной слой (без копирования).
+    public double[] field() {
+        return T;
+    }
+
+    public int sizeGrid() {
+        return sizeGrid;
+    }
+
+    public Boundary boundary() {
+        return boundary;
+    }
+
+    public Scheme scheme() {
+        return scheme;
+    }
+
+    public int steps() {
+        return steps;
+    }
+
+    // Наибольшее изменение поля на последнем измеренном шаге.
+    public double maxChange() {
+        return bands.maxChange();
+    }
+
+    // Среднеквадратичное изменение поля на последнем измеренном шаге.
+    public double rmsChange() {
+        return bands.rmsChange();
+    }
+
+    // Наибольшее изменение относительно наибольшего значения поля.
+    public double relativeChange() {
+        return bands.relativeChange();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,252 @@
+/**
+ * DiffusionSolver3D
+ *
+ * Решение уравнения диффузии загрязнений на трехмерной сетке sizeGrid х sizeGrid х depthGrid явной схемой с
+ * семиточечным шаблоном. Временные слои хранятся в плоских массивах float (узел (i, j) слоя k по индексу
+ * (k * sizeGrid + i) * sizeGrid + j), поэтому два слоя сетки 256 х 256 х 256 занимают около 130 МБ. Соседи узла по
+ * третьему направлению находятся по индексам +-sizeGrid^2.
+ *
+ * Сетка делится по k на плиты из нескольких слоев (Bands), которые обрабатываются параллельно в пуле ForkJoin. Как и
+ * в DiffusionSolver, источники хранятся в разреженном индексе (SourceIndex), граничные условия первого рода задаются
+ * один раз, а второго рода - копированием граней после каждого шага; изменение поля за шаг измеряется по запросу.
+ *
+ * Явная схема в трех измерениях устойчива при lambda * tau / (ro * c * h^2) <= 1/6. Схема ADI для трехмерной сетки не
+ * реализована.
+ *
+ * @author Artur Manukian
+ */
+
+public class DiffusionSolver3D {
+
+    // Минимальное количество слоев в плите.
+    private static final int MIN_SLAB = 2;
+
+    private final DiffusionSolver.Boundary boundary;
+    private final int sizeGrid;
+    private final int depthGrid;
+    // Шаг между слоями.
+    private final int layer;
+    private final float coefficient;
+
+    private float[] T;
+    private float[] newT;
+
+    private final int[] sourceIndex;
+    private final float[] sourceValue;
+
+    // Плиты слоев и изменение поля за шаг.
+    private final Bands slabs;
+    private int steps;
+
+    public DiffusionSolver3D(Scenario scenario, int threads) {
+        int sizeGrid = scenario.sizeGrid();
+        int depthGrid = scenario.depthGrid();
+        if (sizeGrid < 3 || depthGrid < 3 || (long) sizeGrid * sizeGrid * depthGrid > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Недопустимый размер сетки: " + sizeGrid + " х " + sizeGrid + " х "
+                    + depthGrid);
+        }
+        if (scenario.scheme() != DiffusionSolver.Scheme.EXPLICIT) {
+            throw new IllegalArgumentException("Для трехмерной сетки реализована только явная схема");
+        }
+        double h = scenario.gridStep();
+        double coefficient = (scenario.lambda() * scenario.tau()) / (scenario.ro() * scenario.c()) / (h * h);
+        if (coefficient > 1.0 / 6) {
+            throw new IllegalArgumentException("Явная схема неустойчива: lambda * tau / (ro * c * h^2) = "
+                    + coefficient + " > 1/6");
+        }
+        this.boundary = scenario.boundary();
+        this.sizeGrid = sizeGrid;
+        this.depthGrid = depthGrid;
+        this.layer = sizeGrid * sizeGrid;
+        this.coefficient = (float) coefficient;
+        this.T = new float[layer * depthGrid];
+        this.newT = new float[layer * depthGrid];
+        this.slabs = new Bands(depthGrid - 2, MIN_SLAB, threads);
+
+        // Граничные условия первого рода на всех гранях.
+        if (boundary == DiffusionSolver.Boundary.DIRICHLET) {
+            float t = (float) scenario.t();
+            for (int k = 0; k < depthGrid; k++) {
+                for (int i = 0; i < sizeGrid; i++) {
+                    for (int j = 0; j < sizeGrid; j++) {
+                        if (k == 0 || k == depthGrid - 1 || i == 0 || i == sizeGrid - 1 || j == 0
+                                || j == sizeGrid - 1) {
+                            T[(k * sizeGrid + i) * sizeGrid + j] = t;
+                            newT[(k * sizeGrid + i) * sizeGrid + j] = t;
+                        }
+                    }
+                }
+            }
+        }
+
+        SourceIndex sources = new SourceIndex();
+        for (Scenario.Source source : scenario.sources()) {
+            if (source.z() == 0) {
+                throw new IllegalArgumentException("Для трехмерной сетки у источника должна быть задана "
+                        + "координата z: (" + source.y() + ", " + source.x() + ")");
+            }
+            for (int z = source.z(); z < source.z() + source.depth(); z++) {
+                for (int y = source.y(); y < source.y() + source.height(); y++) {
+                    for (int x = source.x(); x < source.x() + source.width(); x++) {
+                        sources.add(checkedIndex(y, x, z), source.q());
+                    }
+                }
+            }
+        }
+        sourceIndex = sources.indices();
+        double[] values = sources.values();
+        sourceValue = new float[values.length];
+        for (int k = 0; k < values.length; k++) {
+            sourceValue[k] = (float) values[k];
+        }
+    }
+
+    public DiffusionSolver3D(Scenario scenario) {
+        this(scenario, Runtime.getRuntime().availableProcessors());
+    }
+
+    private int checkedIndex(int y, int x, int z) {
+        if (y < 1 || y > sizeGrid - 2 || x < 1 || x > sizeGrid - 2 || z < 1 || z > depthGrid - 2) {
+            throw new IllegalArgumentException("Источник вне внутренней области сетки: (" + y + ", " + x + ", " + z
+                    + ")");
+        }
+        return (z * sizeGrid + y) * sizeGrid + x;
+    }
+
+    /* Один шаг по времени */
+    public void step() {
+        step(false);
+    }
+
+    // measure - измерить изменение поля на этом шаге.
+    public void step(boolean measure) {
+        final float[] from = T;
+        final float[] to = newT;
+        slabs.run(new Blocks.Block() {
+            @Override
+            public void run(int slab) {
+                stencil(from, to, slabs.from(slab), slabs.to(slab));
+            }
+        });
+        for (int k = 0; k < sourceIndex.length; k++) {
+            newT[sourceIndex[k]] += sourceValue[k];
+        }
+        float[] swap = T;
+        T = newT;
+        newT = swap;
+        applyBoundary(T);
+        if (measure) {
+            measureChange(newT);
+        }
+        steps++;
+    }
+
+    public void run(int n) {
+        for (int counter = 0; counter < n; counter++) {
+            step();
+        }
+    }
+
+    /* Семиточечный шаблон для слоев [layerFrom, layerTo) */
+    private void stencil(float[] from, float[] to, int layerFrom, int layerTo) {
+        int size = sizeGrid;
+        int plane = layer;
+        float a = coefficient;
+        for (int k = layerFrom; k < layerTo; k++) {
+            for (int i = 1; i < size - 1; i++) {
+                int row = (k * size + i) * size;
+                for (int m = row + 1; m < row + size - 1; m++) {
+                    to[m] = from[m] + a * (from[m + 1] + from[m - 1] + from[m + size] + from[m - size]
+                            + from[m + plane] + from[m - plane] - 6 * from[m]);
+                }
+            }
+        }
+    }
+
+    /* Граничные условия второго рода */
+    // Значения на гранях приравниваются соседним внутренним узлам.
+    private void applyBoundary(float[] field) {
+        if (boundary != DiffusionSolver.Boundary.NEUMANN) {
+            return;
+        }
+        int size = sizeGrid;
+        int last = size - 1;
+        System.arraycopy(field, layer, field, 0, layer);
+        System.arraycopy(field, (depthGrid - 2) * layer, field, (depthGrid - 1) * layer, layer);
+        for (int k = 0; k < depthGrid; k++) {
+            int plane = k * layer;
+            System.arraycopy(field, plane + size, field, plane, size);
+            System.arraycopy(field, plane + (last - 1) * size, field, plane + last * size, size);
+            for (int i = 0; i < size; i++) {
+                field[plane + i * size] = field[plane + i * size + 1];
+                field[plane + i * size + last] = field[plane + i * size + last - 1];
+            }
+        }
+    }
+
+    /* Изменение поля за шаг */
+    private void measureChange(final float[] before) {
+        final float[] after = T;
+        final int size = sizeGrid;
+        final int layers = depthGrid - 2;
+        slabs.run(new Blocks.Block() {
+            @Override
+            public void run(int slab) {
+                double max = 0;
+                double squares = 0;
+                double value = 0;
+                for (int k = slabs.from(slab); k < slabs.to(slab); k++) {
+                    for (int i = 1; i < size - 1; i++) {
+                        int row = (k * size + i) * size;
+                        for (int m = row + 1; m < row + size - 1; m++) {
+                            double change = after[m] - before[m];
+                            max = Math.max(max, Math.abs(change));
+                            squares += change * change;
+                            value = Math.max(value, Math.abs(after[m]));
+                        }
+                    }
+                }
+                slabs.setChange(slab, max, squares, value);
+            }
+        });
+        slabs.reduceChange((double) (size - 2) * (size - 2) * layers);
+    }
+
+    public void shutdown() {
+        slabs.shutdown();
+    }
+
+    // Концентрация в узле (i, j) слоя k.
+    public double get(int i, int j, int k) {
+        return T[(k * sizeGrid + i) * sizeGrid + j];
+    }
+
+    // Текущий временной слой (без копирования).
+    public float[] field() {
+        return T;
+    }
+
+    public int sizeGrid() {
+        return sizeGrid;
+    }
+
+    public int depthGrid() {
+        return depthGrid;
+    }
+
+    public int steps() {
+        return steps;
+    }
+
+    public double maxChange() {
+        return slabs.maxChange();
+    }
+
+    public double rmsChange() {
+        return slabs.rmsChange();
+    }
+
+    public double relativeChange() {
+        return slabs.relativeChange();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+/**
+ * FlatLattice
+ *
+ * Решетка с одним байтом на узел: 0 - занятый узел, 1 - свободный узел, 2 - заполненный узел, как в исходном
+ * массиве int[][], но без отдельного массива на каждую строку.
+ *
+ * @author Artur Manukian
+ */
+
+public class FlatLattice extends Lattice {
+
+    private final byte[] sites;
+
+    public FlatLattice(int heightGrid, int widthGrid) {
+        this(heightGrid, widthGrid, 1);
+    }
+
+    public FlatLattice(int heightGrid, int widthGrid, int depthGrid) {
+        super(heightGrid, widthGrid, depthGrid);
+        sites = new byte[size];
+    }
+
+    @Override
+    public boolean isFree(int index) {
+        return sites[index] != 0;
+    }
+
+    @Override
+    public boolean isFilled(int index) {
+        return sites[index] == 2;
+    }
+
+    @Override
+    public void setFree(int index, boolean free) {
+        sites[index] = free ? (byte) 1 : 0;
+    }
+
+    @Override
+    public boolean tryFill(int index) {
+        if (sites[index] == 1) {
+            sites[index] = 2;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clearFilled() {
+        for (int k = 0; k < size; k++) {
+            if (sites[k] == 2) {
+                sites[k] = 1;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(sites, (byte) 0);
+    }
+
+    @Override
+    public void setFreeBits(int index, int count, long bits) {
+        for (int t = 0; t < count; t++) {
+            // 0 - если узел занят.
+            // 1 - если узел свободен.
+            sites[index + t] = (byte) (bits >>> t & 1);
+        }
+    }
+
+    @Override
+    public long filledBits(int index, int count) {
+        long bits = 0;
+        for (int t = 0; t < count; t++) {
+            // 2 - заполненный узел.
+            bits |= (long) (sites[index + t] >>> 1) << t;
+        }
+        return bits;
+    }
+}
\ No newline at end of file
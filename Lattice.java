@@ -0,0 +1,165 @@
+import java.util.SplittableRandom;
+
+/**
+ * Lattice
+ *
+ * Перколяционная решетка в одном плоском массиве, который переиспользуется между итерациями метода Монте-Карло.
+ * Как и в массиве [heightGrid + 2][widthGrid + 2], вокруг решетки имеются препятствия на границах, а узел (i, j)
+ * хранится по индексу i * (widthGrid + 2) + j, поэтому соседи узла находятся по индексам +-1 и +-(widthGrid + 2).
+ *
+ * Трехмерная решетка (depthGrid > 1) состоит из слоев такого же вида, между которыми находятся слои-препятствия,
+ * поэтому соседи узла по третьему направлению находятся по индексам +-layer, где layer = (heightGrid + 2) *
+ * (widthGrid + 2). Двумерная решетка - решетка с одним слоем без слоев-препятствий, ее индексы не изменяются.
+ *
+ * Решетка может иметь периодические границы по ширине (и по слоям): тогда первый и последний узлы строки (слои 1 и
+ * depthGrid) - соседи. Узлы границ при этом остаются занятыми, а переход через границу выполняют SpanningCluster и
+ * ClusterStatistics. Периодичность задает генератор решетки (LatticeGenerator.periodic).
+ *
+ * Узел может быть занятым (препятствие), свободным или заполненным (свободный узел, до которого дошло протекание).
+ * Имеются два способа хранения: FlatLattice (один байт на узел) и BitLattice (один бит занятости и один бит
+ * заполнения на узел).
+ *
+ * @author Artur Manukian
+ */
+
+public abstract class Lattice {
+
+    protected final int heightGrid;
+    protected final int widthGrid;
+    // Количество слоев, 1 - двумерная решетка.
+    protected final int depthGrid;
+    // Шаг между строками с учетом границ.
+    protected final int stride;
+    // Шаг между слоями с учетом границ.
+    protected final int layer;
+    // Количество узлов с учетом границ.
+    protected final int size;
+    // Периодические границы по ширине и по слоям.
+    private boolean periodic;
+
+    protected Lattice(int heightGrid, int widthGrid, int depthGrid) {
+        long layer = (long) (heightGrid + 2) * (widthGrid + 2);
+        long size = depthGrid > 1 ? layer * (depthGrid + 2) : layer;
+        if (heightGrid < 1 || widthGrid < 1 || depthGrid < 1 || size > Integer.MAX_VALUE - 64) {
+            throw new IllegalArgumentException("Недопустимый размер решетки: " + heightGrid + " х " + widthGrid
+                    + (depthGrid > 1 ? " х " + depthGrid : ""));
+        }
+        this.heightGrid = heightGrid;
+        this.widthGrid = widthGrid;
+        this.depthGrid = depthGrid;
+        this.stride = widthGrid + 2;
+        this.layer = (int) layer;
+        this.size = (int) size;
+    }
+
+    /* Решетка с одним байтом на узел */
+    public static Lattice flat(int heightGrid, int widthGrid) {
+        return new FlatLattice(heightGrid, widthGrid, 1);
+    }
+
+    /* Решетка с битовой упаковкой */
+    public static Lattice packed(int heightGrid, int widthGrid) {
+        return new BitLattice(heightGrid, widthGrid, 1);
+    }
+
+    public static Lattice create(int heightGrid, int widthGrid, boolean packed) {
+        return create(heightGrid, widthGrid, 1, packed);
+    }
+
+    /* Трехмерная решетка */
+    public static Lattice create(int heightGrid, int widthGrid, int depthGrid, boolean packed) {
+        return packed ? new BitLattice(heightGrid, widthGrid, depthGrid)
+                : new FlatLattice(heightGrid, widthGrid, depthGrid);
+    }
+
+    public final int heightGrid() {
+        return heightGrid;
+    }
+
+    public final int widthGrid() {
+        return widthGrid;
+    }
+
+    public final int depthGrid() {
+        return depthGrid;
+    }
+
+    public final int stride() {
+        return stride;
+    }
+
+    public final int layer() {
+        return layer;
+    }
+
+    public final int size() {
+        return size;
+    }
+
+    public final boolean isPeriodic() {
+        return periodic;
+    }
+
+    public final void setPeriodic(boolean periodic) {
+        this.periodic = periodic;
+    }
+
+    // Индекс узла (i, j), где i = 1..heightGrid, j = 1..widthGrid.
+    public final int index(int i, int j) {
+        return i * stride + j;
+    }
+
+    // Индекс узла (i, j) в слое k = 1..depthGrid.
+    public final int index(int i, int j, int k) {
+        return (depthGrid > 1 ? k * layer : 0) + i * stride + j;
+    }
+
+    /* Состояние узла */
+    // Свободный узел (в том числе заполненный).
+    public abstract boolean isFree(int index);
+
+    // Заполненный узел.
+    public abstract boolean isFilled(int index);
+
+    // Задание состояния узла, отметка заполнения снимается.
+    public abstract void setFree(int index, boolean free);
+
+    // Задание состояния count <= 64 узлов подряд, начиная с index:
+    // узел index + t свободен, если бит t в bits равен 1.
+    public void setFreeBits(int index, int count, long bits) {
+        for (int t = 0; t < count; t++) {
+            setFree(index + t, (bits >>> t & 1) != 0);
+        }
+    }
+
+    // Состояние заполнения count <= 64 узлов подряд, начиная с index:
+    // бит t результата равен 1, если узел index + t заполнен.
+    public long filledBits(int index, int count) {
+        long bits = 0;
+        for (int t = 0; t < count; t++) {
+            if (isFilled(index + t)) {
+                bits |= 1L << t;
+            }
+        }
+        return bits;
+    }
+
+    // Если узел свободен и еще не заполнен, он становится
+    // заполненным и метод возвращает true.
+    public abstract boolean tryFill(int index);
+
+    // Снятие отметок заполнения со всех узлов.
+    public abstract void clearFilled();
+
+    // Все узлы становятся занятыми.
+    public abstract void clear();
+
+    /* Заполнение решетки */
+    // С помощью генератора разыгрывается состояние каждого узла:
+    // узел занят с вероятностью p и свободен в остальных случаях
+    // (LatticeGenerator.uniform). Отметки заполнения снимаются,
+    // границы остаются занятыми.
+    public void fill(SplittableRandom random, double p) {
+        LatticeGenerator.uniform().generate(this, random, p);
+    }
+}
\ No newline at end of file
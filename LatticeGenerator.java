@@ -0,0 +1,462 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * LatticeGenerator
+ *
+ * Способ заполнения перколяционной решетки (Lattice) для заданной вероятности занятости узла p. Имеются генераторы:
+ * - uniform - одинаковая степень занятости всех узлов;
+ * - bands - горизонтальные полосы равной высоты, степень занятости полосы отличается от p на заданную величину;
+ * - gradient - степень занятости изменяется линейно от верхней строки к нижней;
+ * - correlated - коррелированная решетка: узел занят, если значение гауссова случайного поля, сглаженного ядром
+ *   заданного радиуса, не превышает квантиль уровня p, поэтому доля занятых узлов равна p, а занятые узлы
+ *   группируются в пятна размером порядка радиуса;
+ * - periodic - решетка любого из этих генераторов с периодическими границами по ширине (и по слоям трехмерной
+ *   решетки), протекание по-прежнему идет от верхней границы к нижней.
+ *
+ * Состояние узлов разыгрывается сразу для 64 соседних узлов строки: равномерные 53-битовые числа всех 64 узлов
+ * сравниваются с порогом p * 2^53 поразрядно, начиная со старшего разряда, и очередное случайное число типа long дает
+ * очередной разряд для всех узлов, которые еще не решены. Каждый разряд решает в среднем половину оставшихся узлов,
+ * поэтому на 64 узла расходуется около восьми чисел вместо 64 вызовов nextDouble, а распределение совпадает с
+ * точным сравнением nextDouble() < p. Младшие нулевые разряды порога не сравниваются: узлы, совпавшие с порогом до
+ * его младшего единичного разряда, не меньше порога, поэтому для p = k / 2^m сравнение заканчивается не более чем за
+ * m разрядов (одно число на 64 узла при p = 0.5, два - при p = 0.25 и 0.75).
+ *
+ * Генераторы не хранят состояния между вызовами (рабочий массив коррелированного генератора принадлежит потоку),
+ * поэтому один генератор используется всеми потоками TrialExecutor.
+ *
+ * Генератор можно задать строкой (parse) в виде toString, например "periodic(correlated(2.0))", или через пробелы:
+ * "bands -0.16 -0.08 0", "gradient -0.1 0.1", "periodic correlated 2".
+ *
+ * @author Artur Manukian
+ */
+
+public abstract class LatticeGenerator {
+
+    private static final double TWO_53 = 9007199254740992.0;
+    // Полуширина ядра сглаживания в радиусах.
+    private static final double KERNEL_WIDTH = 3;
+
+    private static final LatticeGenerator UNIFORM = new Uniform();
+
+    /* Генераторы */
+    public static LatticeGenerator uniform() {
+        return UNIFORM;
+    }
+
+    // offsets - отклонения степени занятости полос от p, сверху вниз.
+    public static LatticeGenerator bands(double... offsets) {
+        if (offsets.length == 0) {
+            throw new IllegalArgumentException("Не заданы полосы решетки");
+        }
+        return new Bands(offsets.clone());
+    }
+
+    // Степень занятости p + top в первой строке и p + bottom в последней.
+    public static LatticeGenerator gradient(double top, double bottom) {
+        return new Gradient(top, bottom);
+    }
+
+    // radius - радиус корреляции (стандартное отклонение ядра) в узлах.
+    public static LatticeGenerator correlated(double radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Недопустимый радиус корреляции: " + radius);
+        }
+        return new Correlated(radius);
+    }
+
+    public static LatticeGenerator periodic(LatticeGenerator generator) {
+        return generator.isPeriodic() ? generator : new Periodic(generator);
+    }
+
+    /* Генератор по строке */
+    public static LatticeGenerator parse(String value) {
+        String[] tokens = value.replace('(', ' ').replace(')', ' ').replace(',', ' ').trim().split("\\s+");
+        return parse(tokens, 0, value);
+    }
+
+    private static LatticeGenerator parse(String[] tokens, int from, String value) {
+        String name = tokens[from].toLowerCase(Locale.ROOT);
+        if (name.equals("periodic")) {
+            if (from + 1 == tokens.length) {
+                throw new IllegalArgumentException("Не задан генератор периодической решетки: " + value);
+            }
+            return periodic(parse(tokens, from + 1, value));
+        }
+        double[] values = new double[tokens.length - from - 1];
+        for (int k = 0; k < values.length; k++) {
+            values[k] = Double.parseDouble(tokens[from + 1 + k]);
+        }
+        switch (name) {
+            case "uniform":
+                expect(values, 0, value);
+                return uniform();
+            case "bands":
+                return bands(values);
+            case "gradient":
+                expect(values, 2, value);
+                return gradient(values[0], values[1]);
+            case "correlated":
+                expect(values, 1, value);
+                return correlated(values[0]);
+            default:
+                throw new IllegalArgumentException("Неизвестный генератор решетки: " + value);
+        }
+    }
+
+    private static void expect(double[] values, int count, String value) {
+        if (values.length != count) {
+            throw new IllegalArgumentException("Ожидается " + count + " значений генератора, получено "
+                    + values.length + ": " + value);
+        }
+    }
+
+    /* Заполнение решетки */
+    // Отметки заполнения снимаются, границы остаются занятыми.
+    public final void generate(Lattice lattice, SplittableRandom random, double p) {
+        lattice.setPeriodic(isPeriodic());
+        fill(lattice, random, p);
+    }
+
+    protected abstract void fill(Lattice lattice, SplittableRandom random, double p);
+
+    public boolean isPeriodic() {
+        return false;
+    }
+
+    // Строка (i, k) с вероятностью занятости узла p.
+    protected static void fillRow(Lattice lattice, SplittableRandom random, int i, int k, double p) {
+        int from = lattice.index(i, 1, k);
+        int widthGrid = lattice.widthGrid();
+        if (p <= 0 || p >= 1) {
+            long bits = p <= 0 ? -1L : 0;
+            for (int j = 0; j < widthGrid; j += 64) {
+                lattice.setFreeBits(from + j, Math.min(64, widthGrid - j), bits);
+            }
+            return;
+        }
+        // Умножение на степень двойки точное, поэтому
+        // U < threshold равносильно U / 2^53 < p.
+        long threshold = (long) Math.ceil(p * TWO_53);
+        for (int j = 0; j < widthGrid; j += 64) {
+            lattice.setFreeBits(from + j, Math.min(64, widthGrid - j), freeBits(random, threshold));
+        }
+    }
+
+    // Свободные узлы среди 64 узлов: бит t равен 1, если равномерное
+    // 53-битовое число узла t не меньше threshold (threshold > 0). Для
+    // еще не решенных узлов (undecided) сравнивается очередной разряд.
+    // Ниже младшего единичного разряда порога все его разряды нулевые,
+    // и нерешенные узлы свободны без новых случайных чисел.
+    static long freeBits(SplittableRandom random, long threshold) {
+        long undecided = -1L;
+        long free = 0;
+        int last = Long.numberOfTrailingZeros(threshold);
+        for (int bit = 52; bit >= last && undecided != 0; bit--) {
+            long r = random.nextLong();
+            if ((threshold >>> bit & 1) != 0) {
+                // Разряд числа 0 - число меньше порога, узел занят.
+                undecided &= r;
+            } else {
+                // Разряд числа 1 - число больше порога, узел свободен.
+                free |= undecided & r;
+                undecided &= ~r;
+            }
+        }
+        return free | undecided;
+    }
+
+    private static double clamp(double p) {
+        return Math.max(0, Math.min(1, p));
+    }
+
+    /* Одинаковая степень занятости */
+    private static final class Uniform extends LatticeGenerator {
+
+        @Override
+        protected void fill(Lattice lattice, SplittableRandom random, double p) {
+            for (int k = 1; k < lattice.depthGrid() + 1; k++) {
+                for (int i = 1; i < lattice.heightGrid() + 1; i++) {
+                    fillRow(lattice, random, i, k, p);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "uniform";
+        }
+    }
+
+    /* Полосы */
+    private static final class Bands extends LatticeGenerator {
+
+        private final double[] offsets;
+
+        Bands(double[] offsets) {
+            this.offsets = offsets;
+        }
+
+        @Override
+        protected void fill(Lattice lattice, SplittableRandom random, double p) {
+            int heightGrid = lattice.heightGrid();
+            for (int k = 1; k < lattice.depthGrid() + 1; k++) {
+                for (int i = 1; i < heightGrid + 1; i++) {
+                    int band = (int) ((long) (i - 1) * offsets.length / heightGrid);
+                    fillRow(lattice, random, i, k, clamp(p + offsets[band]));
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            String text = Arrays.toString(offsets);
+            return "bands(" + text.substring(1, text.length() - 1) + ")";
+        }
+    }
+
+    /* Линейное изменение степени занятости */
+    private static final class Gradient extends LatticeGenerator {
+
+        private final double top;
+        private final double bottom;
+
+        Gradient(double top, double bottom) {
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        @Override
+        protected void fill(Lattice lattice, SplittableRandom random, double p) {
+            int heightGrid = lattice.heightGrid();
+            for (int k = 1; k < lattice.depthGrid() + 1; k++) {
+                for (int i = 1; i < heightGrid + 1; i++) {
+                    double position = heightGrid > 1 ? (double) (i - 1) / (heightGrid - 1) : 0;
+                    fillRow(lattice, random, i, k, clamp(p + top + (bottom - top) * position));
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "gradient(" + top + ", " + bottom + ")";
+        }
+    }
+
+    /* Коррелированная решетка */
+    // Белый шум сглаживается по каждому направлению гауссовым ядром
+    // с периодическим продолжением и нормируется к единичной дисперсии.
+    private static final class Correlated extends LatticeGenerator {
+
+        // Количество линий, сглаживаемых вместе по направлениям i и k.
+        private static final int CHUNK = 64;
+
+        private final double radius;
+        // Поле и буфер линий для сглаживания, свои для каждого потока.
+        private final ThreadLocal<double[][]> buffers = new ThreadLocal<double[][]>();
+
+        Correlated(double radius) {
+            this.radius = radius;
+        }
+
+        @Override
+        protected void fill(Lattice lattice, SplittableRandom random, double p) {
+            int heightGrid = lattice.heightGrid();
+            int widthGrid = lattice.widthGrid();
+            int depthGrid = lattice.depthGrid();
+            int area = heightGrid * widthGrid;
+            int sites = area * depthGrid;
+            double[][] buffer = buffers(sites, 2 * Math.max(widthGrid, Math.max(heightGrid, depthGrid)) * CHUNK);
+            double[] field = buffer[0];
+            double[] lines = buffer[1];
+
+            // Нормальные случайные величины полярным методом Марсальи.
+            for (int m = 0; m < sites; m += 2) {
+                double u;
+                double v;
+                double s;
+                do {
+                    u = 2 * random.nextDouble() - 1;
+                    v = 2 * random.nextDouble() - 1;
+                    s = u * u + v * v;
+                } while (s >= 1 || s == 0);
+                double scale = Math.sqrt(-2 * Math.log(s) / s);
+                field[m] = u * scale;
+                if (m + 1 < sites) {
+                    field[m + 1] = v * scale;
+                }
+            }
+
+            double variance = 1;
+            if (radius > 0) {
+                variance *= smooth(field, lines, widthGrid, 1, widthGrid, sites / widthGrid);
+                variance *= smooth(field, lines, heightGrid, widthGrid, area, depthGrid);
+                if (depthGrid > 1) {
+                    variance *= smooth(field, lines, depthGrid, area, sites, 1);
+                }
+            }
+
+            // Узел занят, если нормированное значение поля
+            // не больше квантиля уровня p.
+            double level = p <= 0 ? Double.NEGATIVE_INFINITY
+                    : p >= 1 ? Double.POSITIVE_INFINITY : normalQuantile(p) * Math.sqrt(variance);
+            for (int k = 1; k < depthGrid + 1; k++) {
+                for (int i = 1; i < heightGrid + 1; i++) {
+                    int row = ((k - 1) * heightGrid + i - 1) * widthGrid;
+                    int from = lattice.index(i, 1, k);
+                    for (int j = 0; j < widthGrid; j += 64) {
+                        int count = Math.min(64, widthGrid - j);
+                        long bits = 0;
+                        for (int t = 0; t < count; t++) {
+                            if (field[row + j + t] > level) {
+                                bits |= 1L << t;
+                            }
+                        }
+                        lattice.setFreeBits(from + j, count, bits);
+                    }
+                }
+            }
+        }
+
+        // Сглаживание линий длины length с шагом step между узлами:
+        // линии начинаются в узлах b * block + x, где b < blocks, x < step.
+        // Соседние линии (до CHUNK) копируются в буфер вместе, с периодическим
+        // продолжением на полуширину ядра, поэтому чтение поля идет подряд.
+        // Возвращает дисперсию сглаженного белого шума (сумму квадратов
+        // весов ядра).
+        private double smooth(double[] field, double[] lines, int length, int step, int block, int blocks) {
+            double[] weights = kernel(length);
+            int half = weights.length / 2;
+            int padded = length + weights.length - 1;
+            for (int b = 0; b < blocks; b++) {
+                int base = b * block;
+                if (step == 1) {
+                    // Линия лежит в поле подряд.
+                    for (int q = 0; q < padded; q++) {
+                        int t = q - half;
+                        lines[q] = field[base + (t < 0 ? t + length : t >= length ? t - length : t)];
+                    }
+                    for (int t = 0; t < length; t++) {
+                        double sum = 0;
+                        for (int s = 0; s < weights.length; s++) {
+                            sum += weights[s] * lines[t + s];
+                        }
+                        field[base + t] = sum;
+                    }
+                    continue;
+                }
+                for (int x = 0; x < step; x += CHUNK) {
+                    int width = Math.min(CHUNK, step - x);
+                    for (int q = 0; q < padded; q++) {
+                        int t = ((q - half) % length + length) % length;
+                        System.arraycopy(field, base + t * step + x, lines, q * width, width);
+                    }
+                    for (int t = 0; t < length; t++) {
+                        int to = base + t * step + x;
+                        for (int m = 0; m < width; m++) {
+                            field[to + m] = 0;
+                        }
+                        for (int s = 0; s < weights.length; s++) {
+                            double weight = weights[s];
+                            int from = (t + s) * width;
+                            for (int m = 0; m < width; m++) {
+                                field[to + m] += weight * lines[from + m];
+                            }
+                        }
+                    }
+                }
+            }
+            double variance = 0;
+            for (double weight : weights) {
+                variance += weight * weight;
+            }
+            return variance;
+        }
+
+        // Нормированное гауссово ядро, свернутое по периоду length,
+        // чтобы каждый узел линии входил в сумму один раз.
+        private double[] kernel(int length) {
+            int half = (int) Math.ceil(KERNEL_WIDTH * radius);
+            double[] folded = new double[length];
+            double total = 0;
+            for (int s = -half; s <= half; s++) {
+                double weight = Math.exp(-0.5 * s * s / (radius * radius));
+                folded[((s % length) + length) % length] += weight;
+                total += weight;
+            }
+            // Ядро с центром в середине массива.
+            int size = Math.min(length, 2 * half + 1);
+            int center = size / 2;
+            double[] weights = new double[size];
+            for (int s = 0; s < size; s++) {
+                weights[s] = folded[((s - center) % length + length) % length] / total;
+            }
+            return weights;
+        }
+
+        private double[][] buffers(int sites, int lines) {
+            double[][] buffer = buffers.get();
+            if (buffer == null || buffer[0].length != sites || buffer[1].length < lines) {
+                buffer = new double[][] {new double[sites], new double[lines]};
+                buffers.set(buffer);
+            }
+            return buffer;
+        }
+
+        @Override
+        public String toString() {
+            return "correlated(" + radius + ")";
+        }
+    }
+
+    /* Периодические границы */
+    private static final class Periodic extends LatticeGenerator {
+
+        private final LatticeGenerator generator;
+
+        Periodic(LatticeGenerator generator) {
+            this.generator = generator;
+        }
+
+        @Override
+        protected void fill(Lattice lattice, SplittableRandom random, double p) {
+            generator.fill(lattice, random, p);
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "periodic(" + generator + ")";
+        }
+    }
+
+    /* Квантиль стандартного нормального распределения */
+    // Рациональное приближение Акклама, относительная погрешность
+    // не более 1.2e-9.
+    static double normalQuantile(double p) {
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+            6.680131188771972e+01, -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+            3.754408661907416e+00};
+        double low = 0.02425;
+        if (p < low || p > 1 - low) {
+            double q = Math.sqrt(-2 * Math.log(p < low ? p : 1 - p));
+            double x = (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+            return p < low ? x : -x;
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,184 @@
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * LatticeRenderer
+ *
+ * Изображение перколяционной решетки в формате PNG, которое записывается построчно (PngWriter), поэтому память не
+ * зависит от размера решетки. Каждому узлу соответствует пиксель, либо, при уменьшении в scale раз, блок узлов
+ * scale х scale.
+ *
+ * Имеются два вида изображений:
+ * - заполненные узлы: 1 бит на пиксель, черным обозначены заполненные узлы; строки изображения собираются из слов по
+ *   64 узла (Lattice.filledBits), для BitLattice - прямо из упакованных битов решетки; уменьшенное изображение -
+ *   оттенки серого по доле заполненных узлов в блоке;
+ * - кластеры: палитра 8 бит на пиксель, каждый кластер окрашен по своей метке, стягивающий кластер - черный, занятые
+ *   узлы - белые; в уменьшенном изображении блок черный, если в нем есть узел стягивающего кластера, иначе его цвет
+ *   берется по самой частой метке блока (включая занятые узлы). Метки всех узлов (Clusters)
+ *   занимают около 6 байт на узел, поэтому размер решетки для этого вида ограничен (PercolationImageModel).
+ *
+ * @author Artur Manukian
+ */
+
+public class LatticeRenderer {
+
+    // Индексы палитры для занятых узлов и стягивающего кластера.
+    private static final int BLOCKED = 0;
+    private static final int SPANNING = 1;
+
+    private LatticeRenderer() {
+    }
+
+    /* Заполненные узлы */
+    public static void renderFilled(Lattice lattice, Path path, int scale) throws IOException {
+        int heightGrid = lattice.heightGrid();
+        int widthGrid = lattice.widthGrid();
+        if (scale <= 1) {
+            try (PngWriter png = open(path, widthGrid, heightGrid, 1, PngWriter.GRAYSCALE, null)) {
+                byte[] row = new byte[png.rowBytes()];
+                for (int i = 1; i < heightGrid + 1; i++) {
+                    int from = lattice.index(i, 1);
+                    for (int j = 0; j < widthGrid; j += 64) {
+                        int count = Math.min(64, widthGrid - j);
+                        long mask = count == 64 ? -1L : (1L << count) - 1;
+                        // 0 - черный (заполненный узел), 1 - белый. Первый
+                        // узел - старший бит, биты после конца строки нулевые.
+                        long bits = Long.reverse(~lattice.filledBits(from + j, count) & mask);
+                        for (int b = 0; b < count; b += 8) {
+                            row[(j + b) >>> 3] = (byte) (bits >>> (56 - b));
+                        }
+                    }
+                    png.writeRow(row);
+                }
+            }
+            return;
+        }
+
+        int width = (widthGrid + scale - 1) / scale;
+        int height = (heightGrid + scale - 1) / scale;
+        try (PngWriter png = open(path, width, height, 8, PngWriter.GRAYSCALE, null)) {
+            byte[] row = new byte[width];
+            int[] filled = new int[width];
+            for (int y = 0; y < height; y++) {
+                int rowFrom = 1 + y * scale;
+                int rowTo = Math.min(heightGrid + 1, rowFrom + scale);
+                for (int i = rowFrom; i < rowTo; i++) {
+                    int from = lattice.index(i, 1);
+                    for (int j = 0; j < widthGrid; j += 64) {
+                        long bits = lattice.filledBits(from + j, Math.min(64, widthGrid - j));
+                        while (bits != 0) {
+                            filled[(j + Long.numberOfTrailingZeros(bits)) / scale]++;
+                            bits &= bits - 1;
+                        }
+                    }
+                }
+                for (int x = 0; x < width; x++) {
+                    int area = (rowTo - rowFrom) * (Math.min(widthGrid, (x + 1) * scale) - x * scale);
+                    row[x] = (byte) (255 - 255 * filled[x] / area);
+                    filled[x] = 0;
+                }
+                png.writeRow(row);
+            }
+        }
+    }
+
+    /* Кластеры по меткам */
+    public static void renderClusters(Lattice lattice, SpanningCluster.Clusters clusters, Path path, int scale)
+            throws IOException {
+        scale = Math.max(1, scale);
+        int heightGrid = lattice.heightGrid();
+        int widthGrid = lattice.widthGrid();
+        int width = (widthGrid + scale - 1) / scale;
+        int height = (heightGrid + scale - 1) / scale;
+        int spanningLabel = clusters.spanningLabel();
+
+        try (PngWriter png = open(path, width, height, 8, PngWriter.INDEXED, palette())) {
+            byte[] row = new byte[width];
+            int[] block = new int[scale * scale];
+            for (int y = 0; y < height; y++) {
+                int rowFrom = 1 + y * scale;
+                int rowTo = Math.min(heightGrid + 1, rowFrom + scale);
+                for (int x = 0; x < width; x++) {
+                    int columnFrom = 1 + x * scale;
+                    int columnTo = Math.min(widthGrid + 1, columnFrom + scale);
+                    int label = blockLabel(clusters, block, rowFrom, rowTo, columnFrom, columnTo, spanningLabel);
+                    row[x] = (byte) (label == 0 ? BLOCKED : label == spanningLabel ? SPANNING : color(label));
+                }
+                png.writeRow(row);
+            }
+        }
+    }
+
+    // Метка блока узлов: метка стягивающего кластера, если его узел
+    // есть в блоке, иначе самая частая метка (при равенстве - меньшая).
+    private static int blockLabel(SpanningCluster.Clusters clusters, int[] block, int rowFrom, int rowTo,
+            int columnFrom, int columnTo, int spanningLabel) {
+        int count = 0;
+        for (int i = rowFrom; i < rowTo; i++) {
+            for (int j = columnFrom; j < columnTo; j++) {
+                int label = clusters.labelAt(i, j);
+                if (label != 0 && label == spanningLabel) {
+                    return label;
+                }
+                block[count++] = label;
+            }
+        }
+        if (count == 1) {
+            return block[0];
+        }
+        Arrays.sort(block, 0, count);
+        int label = block[0];
+        int most = 0;
+        int k = 0;
+        while (k < count) {
+            int run = k;
+            while (run < count && block[run] == block[k]) {
+                run++;
+            }
+            if (run - k > most) {
+                most = run - k;
+                label = block[k];
+            }
+            k = run;
+        }
+        return label;
+    }
+
+    private static PngWriter open(Path path, int width, int height, int bitDepth, int colorType, int[] palette)
+            throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+        try {
+            return new PngWriter(out, width, height, bitDepth, colorType, palette);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    // Индекс палитры 2..255 для метки кластера. Метки перемешиваются,
+    // чтобы соседние кластеры различались по цвету.
+    private static int color(int label) {
+        return 2 + ((label * 0x9E3779B1) >>> 8) % 254;
+    }
+
+    // Палитра: белый, черный и 254 насыщенных цвета.
+    private static int[] palette() {
+        int[] palette = new int[256];
+        palette[BLOCKED] = 0xffffff;
+        palette[SPANNING] = 0x000000;
+        for (int k = 2; k < 256; k++) {
+            float hue = (k - 2) / 254f;
+            palette[k] = Color.HSBtoRGB(hue, 0.75f, 0.6f + 0.35f * ((k & 3) / 3f)) & 0xffffff;
+        }
+        return palette;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+
+/**
+ * Multigrid
+ *
+ * Многосеточный решатель уравнения Пуассона -Δu = f на квадратной сетке с нулевыми граничными условиями первого
+ * рода (пятиточечный шаблон, шаг исходной сетки равен 1). Используется для расчета стационарного поля концентраций
+ * без шагов по времени.
+ *
+ * Каждая следующая сетка имеет вдвое меньше интервалов (с округлением вверх), поэтому размер исходной сетки может быть
+ * любым. Поправка переносится на мелкую сетку билинейной интерполяцией, невязка на крупную - транспонированной
+ * интерполяцией, нормированной по весам (при четном количестве интервалов это полное взвешивание). Сглаживание -
+ * метод Гаусса-Зейделя с красно-черным упорядочением.
+ *
+ * Решение начинается с самой крупной сетки, и решение каждой сетки интерполируется на следующую как начальное
+ * приближение (полный многосеточный метод), после чего на исходной сетке выполняются V-циклы до достижения
+ * заданной невязки.
+ *
+ * @author Artur Manukian
+ */
+
+public class Multigrid {
+
+    // Количество сглаживаний до и после перехода на крупную сетку.
+    private static final int PRE = 2;
+    private static final int POST = 2;
+    // Наибольшее количество интервалов самой крупной сетки
+    // и количество сглаживаний на ней.
+    private static final int COARSEST = 4;
+    private static final int COARSEST_SWEEPS = 32;
+
+    private final Level[] levels;
+
+    // sizeGrid - размер сетки вместе с границей.
+    public Multigrid(int sizeGrid) {
+        int count = 1;
+        for (int m = sizeGrid - 1; m > COARSEST; m = (m + 1) / 2) {
+            count++;
+        }
+        levels = new Level[count];
+        int m = sizeGrid - 1;
+        for (int l = 0; l < count; l++) {
+            levels[l] = new Level(m, (double) (sizeGrid - 1) / m);
+            m = (m + 1) / 2;
+        }
+        for (int l = 0; l + 1 < count; l++) {
+            levels[l].link(levels[l + 1]);
+        }
+    }
+
+    /* Решение */
+    // u - решение (sizeGrid * sizeGrid, граница равна 0), f - правая
+    // часть. Расчет продолжается, пока наибольшая невязка больше
+    // tolerance * max|f|, но не более maxCycles V-циклов.
+    // Возвращает количество выполненных V-циклов.
+    public int solve(double[] u, double[] f, double tolerance, int maxCycles) {
+        Level fine = levels[0];
+        System.arraycopy(f, 0, fine.f, 0, f.length);
+        double scale = 0;
+        for (double value : f) {
+            scale = Math.max(scale, Math.abs(value));
+        }
+
+        /* Начальное приближение с крупных сеток */
+        for (int l = 0; l + 1 < levels.length; l++) {
+            levels[l].restrict(levels[l].f);
+        }
+        Level coarsest = levels[levels.length - 1];
+        Arrays.fill(coarsest.u, 0);
+        coarsest.smooth(COARSEST_SWEEPS);
+        for (int l = levels.length - 2; l >= 0; l--) {
+            Arrays.fill(levels[l].u, 0);
+            levels[l].prolong();
+            cycle(l);
+        }
+
+        /* V-циклы на исходной сетке */
+        int cycles = 1;
+        while (cycles < maxCycles && fine.residual() > tolerance * scale) {
+            cycle(0);
+            cycles++;
+        }
+        System.arraycopy(fine.u, 0, u, 0, u.length);
+        return cycles;
+    }
+
+    // V-цикл, начиная с сетки l.
+    private void cycle(int l) {
+        Level level = levels[l];
+        if (l == levels.length - 1) {
+            level.smooth(COARSEST_SWEEPS);
+            return;
+        }
+        level.smooth(PRE);
+        level.residual();
+        level.restrict(level.r);
+        Arrays.fill(levels[l + 1].u, 0);
+        cycle(l + 1);
+        level.prolong();
+        level.smooth(POST);
+    }
+
+    /* Сетка одного уровня */
+    private static final class Level {
+
+        // Количество интервалов, размер с границей, квадрат шага.
+        final int m;
+        final int size;
+        final double h2;
+        final double[] u;
+        final double[] f;
+        final double[] r;
+
+        // Следующая (более крупная) сетка и положение каждого узла
+        // этой сетки на ней: левый узел и вес правого узла.
+        Level coarse;
+        int[] left;
+        double[] weight;
+        // Сумма весов узлов этой сетки для каждого узла крупной сетки.
+        double[] norm;
+
+        Level(int m, double h) {
+            this.m = m;
+            this.size = m + 1;
+            this.h2 = h * h;
+            this.u = new double[size * size];
+            this.f = new double[size * size];
+            this.r = new double[size * size];
+        }
+
+        void link(Level coarse) {
+            this.coarse = coarse;
+            left = new int[size];
+            weight = new double[size];
+            norm = new double[coarse.size];
+            for (int i = 0; i < size; i++) {
+                double x = (double) i * coarse.m / m;
+                left[i] = Math.min((int) x, coarse.m - 1);
+                weight[i] = x - left[i];
+                if (i > 0 && i < m) {
+                    norm[left[i]] += 1 - weight[i];
+                    norm[left[i] + 1] += weight[i];
+                }
+            }
+        }
+
+        // Красно-черный метод Гаусса-Зейделя.
+        void smooth(int sweeps) {
+            for (int sweep = 0; sweep < sweeps; sweep++) {
+                for (int color = 0; color < 2; color++) {
+                    for (int i = 1; i < m; i++) {
+                        int row = i * size;
+                        for (int k = row + 1 + ((i + 1 + color) & 1); k < row + m; k += 2) {
+                            u[k] = 0.25 * (h2 * f[k] + u[k - 1] + u[k + 1] + u[k - size] + u[k + size]);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Невязка r = f + Δu, возвращает ее наибольшее значение.
+        double residual() {
+            double max = 0;
+            for (int i = 1; i < m; i++) {
+                int row = i * size;
+                for (int k = row + 1; k < row + m; k++) {
+                    r[k] = f[k] - (4 * u[k] - u[k - 1] - u[k + 1] - u[k - size] - u[k + size]) / h2;
+                    max = Math.max(max, Math.abs(r[k]));
+                }
+            }
+            return max;
+        }
+
+        // Перенос values этой сетки в правую часть крупной сетки.
+        void restrict(double[] values) {
+            double[] target = coarse.f;
+            int cs = coarse.size;
+            Arrays.fill(target, 0);
+            for (int i = 1; i < m; i++) {
+                int ci = left[i];
+                double wi = weight[i];
+                int row = i * size;
+                for (int j = 1; j < m; j++) {
+                    int cj = left[j];
+                    double wj = weight[j];
+                    double value = values[row + j];
+                    int c = ci * cs + cj;
+                    target[c] += (1 - wi) * (1 - wj) * value;
+                    target[c + 1] += (1 - wi) * wj * value;
+                    target[c + cs] += wi * (1 - wj) * value;
+                    target[c + cs + 1] += wi * wj * value;
+                }
+            }
+            for (int ci = 1; ci < coarse.m; ci++) {
+                for (int cj = 1; cj < coarse.m; cj++) {
+                    target[ci * cs + cj] /= norm[ci] * norm[cj];
+                }
+            }
+        }
+
+        // Добавление решения крупной сетки, интерполированного
+        // на эту сетку.
+        void prolong() {
+            double[] source = coarse.u;
+            int cs = coarse.size;
+            for (int i = 1; i < m; i++) {
+                int ci = left[i];
+                double wi = weight[i];
+                int row = i * size;
+                for (int j = 1; j < m; j++) {
+                    int c = ci * cs + left[j];
+                    double wj = weight[j];
+                    u[row + j] += (1 - wi) * ((1 - wj) * source[c] + wj * source[c + 1])
+                            + wi * ((1 - wj) * source[c + cs] + wj * source[c + cs + 1]);
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,209 @@
+import java.util.SplittableRandom;
+
+/**
+ * NewmanZiff
+ *
+ * Алгоритм Ньюмана-Зиффа для задачи узлов. Вместо заполнения решетки для каждого значения p в одной итерации
+ * свободные узлы добавляются по одному в случайном порядке, а кластеры объединяются системой непересекающихся
+ * множеств с весами и сжатием путей. Верхняя и нижняя границы решетки представлены двумя виртуальными узлами,
+ * поэтому момент образования стягивающего кластера определяется точно: это количество свободных узлов, при котором
+ * виртуальные узлы впервые оказываются в одном множестве. На трехмерной решетке у узла шесть соседей, а виртуальные
+ * узлы соответствуют верхней и нижней граням.
+ *
+ * По порогам всех итераций строится вероятность образования стягивающего кластера R(n) для каждого количества
+ * свободных узлов n, а вероятность Pc для любого p получается сверткой R(n) с биномиальным распределением.
+ *
+ * @author Artur Manukian
+ */
+
+public class NewmanZiff {
+
+    private final int heightGrid;
+    private final int widthGrid;
+    private final int depthGrid;
+    // Количество узлов в слое и во всей решетке без границ.
+    private final int area;
+    private final int sites;
+
+    // Порядок добавления узлов.
+    private final int[] order;
+    // Система непересекающихся множеств: для корня хранится
+    // размер множества со знаком минус, для остальных - родитель.
+    // EMPTY - узел еще не добавлен.
+    private final int[] parent;
+    private final int top;
+    private final int bottom;
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    public NewmanZiff(int heightGrid, int widthGrid) {
+        this(heightGrid, widthGrid, 1);
+    }
+
+    public NewmanZiff(int heightGrid, int widthGrid, int depthGrid) {
+        this.heightGrid = heightGrid;
+        this.widthGrid = widthGrid;
+        this.depthGrid = depthGrid;
+        this.area = heightGrid * widthGrid;
+        this.sites = area * depthGrid;
+        this.order = new int[sites];
+        this.parent = new int[sites + 2];
+        this.top = sites;
+        this.bottom = sites + 1;
+    }
+
+    public int heightGrid() {
+        return heightGrid;
+    }
+
+    public int widthGrid() {
+        return widthGrid;
+    }
+
+    public int depthGrid() {
+        return depthGrid;
+    }
+
+    /* Одна итерация */
+    // Возвращает количество свободных узлов, при котором
+    // образовался стягивающий кластер.
+    public int threshold(SplittableRandom random) {
+        // Случайный порядок добавления строится заново (Фишер-Йейтс
+        // "наизнанку"), поэтому он зависит только от генератора, а не
+        // от итерации, выполненной этим объектом ранее.
+        for (int k = 0; k < sites; k++) {
+            int r = random.nextInt(k + 1);
+            order[k] = order[r];
+            order[r] = k;
+        }
+        for (int k = 0; k < sites; k++) {
+            parent[k] = EMPTY;
+        }
+        parent[top] = -1;
+        parent[bottom] = -1;
+
+        for (int n = 0; n < sites; n++) {
+            int site = order[n];
+            int layer = site / area;
+            int row = (site - layer * area) / widthGrid;
+            int column = site - layer * area - row * widthGrid;
+            int root = site;
+            parent[site] = -1;
+
+            if (column > 0 && parent[site - 1] != EMPTY) {
+                root = union(root, site - 1);
+            }
+            if (column < widthGrid - 1 && parent[site + 1] != EMPTY) {
+                root = union(root, site + 1);
+            }
+            if (row > 0 && parent[site - widthGrid] != EMPTY) {
+                root = union(root, site - widthGrid);
+            }
+            if (row < heightGrid - 1 && parent[site + widthGrid] != EMPTY) {
+                root = union(root, site + widthGrid);
+            }
+            if (layer > 0 && parent[site - area] != EMPTY) {
+                root = union(root, site - area);
+            }
+            if (layer < depthGrid - 1 && parent[site + area] != EMPTY) {
+                root = union(root, site + area);
+            }
+            if (row == 0) {
+                root = union(root, top);
+            }
+            if (row == heightGrid - 1) {
+                union(root, bottom);
+            }
+            if (find(top) == find(bottom)) {
+                return n + 1;
+            }
+        }
+        return sites;
+    }
+
+    // Поиск корня с уполовиниванием пути.
+    private int find(int k) {
+        while (parent[k] >= 0) {
+            int next = parent[k];
+            if (parent[next] >= 0) {
+                parent[k] = parent[next];
+            }
+            k = next;
+        }
+        return k;
+    }
+
+    // Объединение по размеру, возвращает новый корень.
+    private int union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+            return a;
+        }
+        if (parent[a] > parent[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent[a] += parent[b];
+        parent[b] = a;
+        return a;
+    }
+
+    /* Микроканоническая вероятность */
+    // R(n) - доля итераций, в которых стягивающий кластер
+    // образовался не позже, чем при n свободных узлах.
+    public static double[] microcanonical(int[] thresholds, int sites) {
+        double[] r = new double[sites + 1];
+        for (int threshold : thresholds) {
+            r[threshold]++;
+        }
+        double cumulative = 0;
+        for (int n = 0; n <= sites; n++) {
+            cumulative += r[n];
+            r[n] = cumulative / thresholds.length;
+        }
+        return r;
+    }
+
+    /* Каноническая вероятность */
+    // Pc(p) = сумма по n биномиальных весов B(N, n, 1 - p) * R(n),
+    // где 1 - p - вероятность того, что узел свободен. Веса
+    // считаются от моды распределения в обе стороны через
+    // отношение соседних весов и затем нормируются, что
+    // исключает переполнение для больших решеток.
+    public static double canonical(double[] r, double p) {
+        int sites = r.length - 1;
+        double q = 1 - p;
+        if (q <= 0) {
+            return r[0];
+        }
+        if (q >= 1) {
+            return r[sites];
+        }
+        int mode = (int) Math.min(sites, Math.max(0, Math.round(q * sites)));
+        double ratio = q / (1 - q);
+        double sum = 1;
+        double result = r[mode];
+
+        double weight = 1;
+        for (int n = mode; n < sites; n++) {
+            weight *= (double) (sites - n) / (n + 1) * ratio;
+            if (weight < 1e-17 * sum) {
+                break;
+            }
+            sum += weight;
+            result += weight * r[n + 1];
+        }
+        weight = 1;
+        for (int n = mode; n > 0; n--) {
+            weight *= (double) n / (sites - n + 1) / ratio;
+            if (weight < 1e-17 * sum) {
+                break;
+            }
+            sum += weight;
+            result += weight * r[n - 1];
+        }
+        return result / sum;
+    }
+}
\ No newline at end of file
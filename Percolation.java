@@ -1,5 +1,11 @@
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 /**
  * Percolation
@@ -8,117 +14,183 @@ import java.util.Locale;
  * решений. Результатом программы является вероятность образования стягивающего кластера для каждого значения p
  * (вероятность занятости узла) с шагом 0.01 по заданному диапазону.
  *
+ * При depthGrid > 1 решается трехмерная задача (шесть соседей у узла). Порог протекания трехмерной решетки - доля
+ * свободных узлов около 0.3116, то есть переход происходит около p = 0.69, поэтому для нее следует задать диапазон,
+ * например, от 0.6 до 0.8.
+ *
+ * Итерации выполняются параллельно (TrialExecutor), результат воспроизводим для заданного зерна генератора. Решетки
+ * заполняются генератором LatticeGenerator: с одинаковой степенью занятости узлов, полосами, с линейным изменением
+ * степени занятости, коррелированные или с периодическими границами.
+ *
+ * Ход расчета периодически сохраняется в контрольную точку (SweepCheckpoint): после остановки программы расчет с теми
+ * же параметрами продолжается с места остановки и дает тот же результат. Скорость расчета, оставшееся время и текущие
+ * оценки Pc выводятся в поток ошибок и доступны через JMX (SweepMetrics).
+ *
+ * При statistics = true по тем же решеткам собирается статистика кластеров (ClusterStatistics): сила стягивающего
+ * кластера P∞, средний размер кластера, длина корреляции и распределение кластеров по размерам, которые
+ * записываются в файл statisticsFile.
+ *
+ * Параметры и сам расчет заданы моделью PercolationModel; программа добавляет к ней контрольную точку, вывод хода
+ * расчета и JMX. Множество вариантов параметров рассчитывается пакетным запуском Batch.
+ *
  * @author Artur Manukian
  */
 
 public class Percolation {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, JMException {
 
         /* Переменные */
-        int i, j; // x и y узлов решетки.
         int heightGrid = 100; // Размер
         int widthGrid = 100; // сетки.
-        int counterOfClusters = 0; // Счетчик стягивающих кластеров.
+        int depthGrid = 1; // Количество слоев, 1 - двумерная решетка.
         int n = 1000; // Количество итераций.
-        // Вероятность образования
-        // стягивающего кластера.
-        double probability;
+        long seed = 2018; // Главное зерно генератора.
+        boolean packed = false; // Битовая упаковка решетки.
+        // Генератор решетки, например LatticeGenerator.gradient(-0.1, 0.1)
+        // или LatticeGenerator.periodic(LatticeGenerator.correlated(2)).
+        LatticeGenerator generator = LatticeGenerator.uniform();
+        // Метод расчета: MONTE_CARLO - заданное количество итераций
+        // для каждого p, NEWMAN_ZIFF - вся кривая Pc(p) за один
+        // проход, ADAPTIVE - итерации для каждого p выполняются,
+        // пока доверительный интервал Pc не станет уже width.
+        PercolationModel.Method method = PercolationModel.Method.MONTE_CARLO;
+        double width = 0.06;
         // Вероятность занятости узла,
-        // его начальное и конечное значения.
-        double p;
+        // ее начальное и конечное значения.
         double pStart = 0.3;
         double pEnd = 0.5;
         double step = 0.01;
+        // Файл контрольной точки и период ее записи
+        // и вывода хода расчета, с.
+        String checkpointFile = "Percolation.checkpoint";
+        int period = 30;
+        // Статистика кластеров и файл для нее.
+        boolean statistics = false;
+        String statisticsFile = "PercolationClusters.txt";
+
+        PercolationModel model = new PercolationModel()
+                .setHeightGrid(heightGrid)
+                .setWidthGrid(widthGrid)
+                .setDepthGrid(depthGrid)
+                .setN(n)
+                .setSeed(seed)
+                .setPacked(packed)
+                .setGenerator(generator)
+                .setMethod(method)
+                .setWidth(width)
+                .setRange(pStart, pEnd, step)
+                .setStatistics(statistics, statisticsFile);
+
+        // Итерации выполняются параллельно на всех ядрах,
+        // каждый блок итераций имеет свой генератор,
+        // каждый поток - свою переиспользуемую решетку.
+        TrialExecutor executor = model.executor();
 
         /* Вывод общих сведений */
-        System.out.println("Алгоритм рекурсивной заливки для перколяционной решетки");
+        System.out.println("Алгоритм итеративной заливки для перколяционной решетки");
         System.out.println("\nПерколяция методом Монте-Карло");
-        System.out.println("Решетка: " + heightGrid + " х " + widthGrid);
+        System.out.println("Решетка: " + heightGrid + " х " + widthGrid + (depthGrid > 1 ? " х " + depthGrid : ""));
+        System.out.println("Генератор решетки: " + generator);
         System.out.println("Количество итераций: " + n);
 
-        /* Цикл для расчета заданного диапазона p */
-        for (p = pStart; p < pEnd + step; p += step) {
-            // Цикл итераций для лучшей
-            // точности вычислений.
-            for (int counter = 0; counter < n; counter++) {
+        /* Расчет алгоритмом Ньюмана-Зиффа или адаптивный */
+        // Контрольная точка и показатели расчета ведутся
+        // только для метода Монте-Карло.
+        if (method != PercolationModel.Method.MONTE_CARLO) {
+            PercolationModel.Result result;
+            try {
+                result = model.run(executor, null, null);
+            } finally {
+                executor.shutdown();
+            }
+            result.print(System.out);
+            return;
+        }
 
-                /* Препятствия на границах */
-                // Инициализация перколяционной решетки.
-                int[][] grid = new int[heightGrid + 2][widthGrid + 2];
-                for (i = 0; i < heightGrid + 2; i++) {
-                    // Заполнение всех i-тых строк
-                    // нулевыми значениями.
-                    Arrays.fill(grid[i], 0);
-                }
+        /* Контрольная точка и показатели расчета */
+        double[] values = model.values();
+        final SweepCheckpoint checkpoint = SweepCheckpoint.open(Paths.get(checkpointFile), seed, heightGrid,
+                widthGrid, depthGrid, generator, values, n);
+        if (checkpoint.trials() > 0) {
+            System.out.println("Продолжение расчета, выполнено итераций: " + checkpoint.trials() + " из "
+                    + (long) values.length * n);
+        }
+        SweepMetrics metrics = new SweepMetrics(heightGrid, widthGrid, depthGrid, values, n);
+        metrics.register();
+        ScheduledExecutorService monitor = monitor(checkpoint, metrics, period);
+        // При остановке программы сохраняются все завершенные блоки.
+        Thread hook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                save(checkpoint);
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(hook);
 
-                /* Заполнение решетки */
-                for (i = 1; i < heightGrid + 1; i++) {
-                    for (j = 1; j < widthGrid + 1; j++) {
-                        // С помощью рандомайзера разыгрывается состояние узла.
-                        // 0 - если узел занят.
-                        // 1 - если узел свободен.
-                        grid[i][j] = Math.random() <= p ? 0 : 1;
-                    }
-                }
+        /* Расчет всех значений p */
+        PercolationModel.Result result = model.run(executor, checkpoint, metrics);
+        executor.shutdown();
+        monitor.shutdown();
+        try {
+            monitor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Runtime.getRuntime().removeShutdownHook(hook);
+        metrics.unregister();
+        checkpoint.delete();
 
-                /* Перколяция */
-                // Протекание начинается из всех свободных
-                // узлов верхней границы решетки.
-                for (i = 1; i < 2; i++) {
-                    for (j = 1; j < widthGrid + 1; j++){
-                        // Если узел свободен, то вызывается
-                        // рекурсивный метод fillGrid.
-                        if (grid[i][j] == 1) {
-                            Percolation floodFill = new Percolation();
-                            floodFill.fillGrid(grid, i, j);
-                        }
-                    }
-                }
+        result.print(System.out);
+    }
 
-                /* Проверка наличия стягивающего кластера */
-                // Проверка всех элементов последней строки.
-                for (i = heightGrid; i < heightGrid + 1; i++) {
-                    for (j = 1; j < widthGrid + 1; j++) {
-                        // 2 - заполненный узел.
-                        // Если один из узлов последней строки является заполненным,
-                        // значит протекание дошло до нижней границы и, соответственно,
-                        // образовался стягивающий кластер.
-                        if (grid[i][j] == 2) {
-                            counterOfClusters++;
-                            // Прерывание цикла, поскольку важен сам факт образования
-                            // стягивающего кластера и нет необходимости в дальнейшем
-                            // приросте счетчика на текущей итерации.
-                            break;
-                        }
-                    }
-                }
+    /* Запись контрольной точки и вывод хода расчета */
+    // Выполняется в отдельном потоке каждые period секунд.
+    private static ScheduledExecutorService monitor(final SweepCheckpoint checkpoint, final SweepMetrics metrics,
+            int period) {
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "percolation-monitor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        monitor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                save(checkpoint);
+                System.err.println(progress(metrics.snapshot()));
             }
-            // Расчет вероятности образования
-            // стягивающего кластера.
-            probability = (double) counterOfClusters / n;
+        }, period, period, TimeUnit.SECONDS);
+        return monitor;
+    }
 
-            System.out.println("\nВероятность занятости узла: p = " + String.format(Locale.ENGLISH, "%(.2f", p));
-            System.out.println("Стягивающих кластеров: " + counterOfClusters);
-            System.out.println("Вероятность образования стягивающего кластера: Pc = " + probability);
-            // Обнуление счетчика кластеров для текущего
-            // значения p после его вывода в консоль.
-            counterOfClusters = 0;
+    private static void save(SweepCheckpoint checkpoint) {
+        try {
+            checkpoint.save();
+        } catch (IOException e) {
+            System.err.println("Ошибка записи контрольной точки " + checkpoint.path() + ": " + e.getMessage());
         }
     }
 
-    /* Рекурсивный алгоритм заливки */
-    private void fillGrid(int[][] grid, int i, int j) {
-
-        if (grid[i][j] == 1) {
-            // Если узле свободен, присваивается
-            // значение 2 и узел становится заполненным.
-            grid[i][j] = 2;
-
-            fillGrid(grid, i, j + 1);
-            fillGrid(grid, i, j - 1);
-            fillGrid(grid, i + 1, j);
-            fillGrid(grid, i - 1, j);
+    // Строка хода расчета: выполненные итерации, скорость, оставшееся
+    // время и значение p с наиболее широким доверительным интервалом Pc.
+    private static String progress(SweepMetrics.Snapshot snapshot) {
+        int widest = 0;
+        double width = -1;
+        for (int k = 0; k < snapshot.pCount(); k++) {
+            double[] interval = snapshot.interval(k);
+            if (snapshot.trials(k) > 0 && interval[1] - interval[0] > width) {
+                width = interval[1] - interval[0];
+                widest = k;
+            }
         }
+        double[] interval = snapshot.interval(widest);
+        return String.format(Locale.ENGLISH,
+                "Выполнено %d из %d итераций, %.0f итераций/с, %.3g узлов/с, осталось %.0f с, "
+                        + "p = %.2f: Pc = %.4f [%.4f, %.4f]",
+                snapshot.trials(), snapshot.totalTrials(), snapshot.trialsPerSecond(), snapshot.sitesPerSecond(),
+                snapshot.etaSeconds(), snapshot.p(widest), snapshot.pc(widest), interval[0], interval[1]);
     }
 }
\ No newline at end of file
@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * PercolationImageModel
+ *
+ * Параметры изображения перколяционной решетки: размер решетки, вероятность занятости узла, генератор решетки, начало
+ * протекания, вид изображения (заполненные узлы или кластеры, окрашенные по меткам), уменьшение и файл изображения.
+ * Параметры задаются методами set... или по ключу (set):
+ *
+ *   heightGrid = 500
+ *   widthGrid = 500
+ *   p = 0.45
+ *   generator = bands -0.16 -0.08 -0.04 -0.02 0   # см. LatticeGenerator.parse
+ *   packed = true                                 # битовая упаковка решетки
+ *   seed = 2018                                   # необязательно, по умолчанию случайное
+ *   source = top                                  # top или center, см. Source
+ *   colorClusters = false
+ *   scale = 1                                     # уменьшение изображения в scale раз
+ *   output = percolation.png
+ *
+ * Расчет (render) записывает изображение и возвращает результат (Result) без вывода в консоль. По умолчанию решетка
+ * хранится упакованной, а для черно-белого изображения кластеры считаются по двум строкам (SpanningCluster.count),
+ * поэтому память определяется решеткой: около 2 бит на узел. Окраска кластеров (colorClusters) требует меток всех
+ * узлов (SpanningCluster.label) - еще около 6 байт на узел, поэтому она допускается только для решеток не более
+ * MAX_COLOR_SITES узлов (8192 х 8192, около 400 МБ меток); для большей решетки render выбрасывает
+ * IllegalArgumentException до заполнения решетки.
+ *
+ * @author Artur Manukian
+ */
+
+public class PercolationImageModel {
+
+    /* Начало протекания */
+    public enum Source {
+        TOP, // Все свободные узлы верхней границы решетки.
+        CENTER // Центральный узел верхней границы, который делается свободным.
+    }
+
+    // Наибольшее количество узлов решетки для окраски кластеров.
+    public static final long MAX_COLOR_SITES = 1L << 26;
+
+    private int heightGrid = 500;
+    private int widthGrid = 500;
+    private double p = 0.45;
+    private LatticeGenerator generator = LatticeGenerator.bands(-0.16, -0.08, -0.04, -0.02, 0);
+    // Битовая упаковка: около 2 бит на узел.
+    private boolean packed = true;
+    // Без заданного зерна каждое изображение случайно.
+    private long seed;
+    private boolean seeded = false;
+    private Source source = Source.TOP;
+    private boolean colorClusters = false;
+    private int scale = 1;
+    private String output = "percolation.png";
+
+    /* Задание параметра по ключу */
+    public PercolationImageModel set(String key, String value) {
+        switch (key) {
+            case "heightGrid":
+                heightGrid = Integer.parseInt(value);
+                break;
+            case "widthGrid":
+                widthGrid = Integer.parseInt(value);
+                break;
+            case "p":
+                p = Double.parseDouble(value);
+                break;
+            case "generator":
+                generator = LatticeGenerator.parse(value);
+                break;
+            case "packed":
+                packed = Boolean.parseBoolean(value);
+                break;
+            case "seed":
+                setSeed(Long.parseLong(value));
+                break;
+            case "source":
+                source = Source.valueOf(value.toUpperCase(Locale.ROOT));
+                break;
+            case "colorClusters":
+                colorClusters = Boolean.parseBoolean(value);
+                break;
+            case "scale":
+                scale = Integer.parseInt(value);
+                if (scale < 1) {
+                    throw new IllegalArgumentException("scale должен быть не меньше 1: " + value);
+                }
+                break;
+            case "output":
+                output = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный параметр: " + key);
+        }
+        return this;
+    }
+
+    /* Расчет и запись изображения */
+    public Result render() throws IOException {
+        if (colorClusters && (long) heightGrid * widthGrid > MAX_COLOR_SITES) {
+            throw new IllegalArgumentException("Окраска кластеров допускается для решетки не более " + MAX_COLOR_SITES
+                    + " узлов (8192 х 8192), задано " + heightGrid + " х " + widthGrid
+                    + "; используйте colorClusters = false");
+        }
+
+        /* Препятствия на границах */
+        // Инициализация перколяционной решетки.
+        // Все узлы, включая границы, изначально заняты.
+        Lattice lattice = Lattice.create(heightGrid, widthGrid, packed);
+        generator.generate(lattice, seeded ? new SplittableRandom(seed) : new SplittableRandom(), p);
+
+        /* Перколяция */
+        SpanningCluster floodFill = new SpanningCluster();
+        if (source == Source.CENTER) {
+            // Протекание начинается из центрального
+            // узла верхней границы решетки.
+            int center = lattice.index(1, (widthGrid + 1) / 2);
+            lattice.setFree(center, true);
+            floodFill.fillFrom(lattice, center);
+        } else {
+            // Протекание начинается из всех свободных
+            // узлов верхней границы решетки.
+            floodFill.fill(lattice);
+        }
+
+        /* Отрисовки и сохранения изображения */
+        // Изображение записывается построчно, без хранения
+        // всего изображения в памяти.
+        Path path = Paths.get(output);
+        if (colorClusters) {
+            // Разметка всех кластеров решетки алгоритмом
+            // Хошена-Копельмана хранит метку каждого узла.
+            SpanningCluster.Clusters clusters = floodFill.label(lattice);
+            LatticeRenderer.renderClusters(lattice, clusters, path, scale);
+            return new Result(heightGrid, widthGrid, p, clusters.spans(), clusters.count(), clusters.largest(),
+                    clusters.spans() ? clusters.size(clusters.spanningLabel()) : 0, path);
+        }
+        // Черным цветом обозначены заполненные узлы,
+        // белым - все остальные узлы. Кластеры считаются
+        // по двум строкам, без меток всех узлов.
+        LatticeRenderer.renderFilled(lattice, path, scale);
+        SpanningCluster.Counts counts = floodFill.count(lattice);
+        return new Result(heightGrid, widthGrid, p, counts.spans(), counts.count(), counts.largest(),
+                counts.spanningSize(), path);
+    }
+
+    public int heightGrid() {
+        return heightGrid;
+    }
+
+    public PercolationImageModel setHeightGrid(int heightGrid) {
+        this.heightGrid = heightGrid;
+        return this;
+    }
+
+    public int widthGrid() {
+        return widthGrid;
+    }
+
+    public PercolationImageModel setWidthGrid(int widthGrid) {
+        this.widthGrid = widthGrid;
+        return this;
+    }
+
+    public double p() {
+        return p;
+    }
+
+    public PercolationImageModel setP(double p) {
+        this.p = p;
+        return this;
+    }
+
+    public LatticeGenerator generator() {
+        return generator;
+    }
+
+    public PercolationImageModel setGenerator(LatticeGenerator generator) {
+        this.generator = generator;
+        return this;
+    }
+
+    public boolean packed() {
+        return packed;
+    }
+
+    public PercolationImageModel setPacked(boolean packed) {
+        this.packed = packed;
+        return this;
+    }
+
+    public PercolationImageModel setSeed(long seed) {
+        this.seed = seed;
+        this.seeded = true;
+        return this;
+    }
+
+    public Source source() {
+        return source;
+    }
+
+    public PercolationImageModel setSource(Source source) {
+        this.source = source;
+        return this;
+    }
+
+    public boolean colorClusters() {
+        return colorClusters;
+    }
+
+    public PercolationImageModel setColorClusters(boolean colorClusters) {
+        this.colorClusters = colorClusters;
+        return this;
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    public PercolationImageModel setScale(int scale) {
+        this.scale = scale;
+        return this;
+    }
+
+    public String output() {
+        return output;
+    }
+
+    public PercolationImageModel setOutput(String output) {
+        this.output = output;
+        return this;
+    }
+
+    /* Результат расчета */
+    public static final class Result {
+
+        private final int heightGrid;
+        private final int widthGrid;
+        private final double p;
+        private final boolean spans;
+        private final int count;
+        private final int largest;
+        // 0, если стягивающего кластера нет.
+        private final int spanningSize;
+        private final Path output;
+
+        Result(int heightGrid, int widthGrid, double p, boolean spans, int count, int largest, int spanningSize,
+                Path output) {
+            this.heightGrid = heightGrid;
+            this.widthGrid = widthGrid;
+            this.p = p;
+            this.spans = spans;
+            this.count = count;
+            this.largest = largest;
+            this.spanningSize = spanningSize;
+            this.output = output;
+        }
+
+        public double p() {
+            return p;
+        }
+
+        public boolean spans() {
+            return spans;
+        }
+
+        // Количество кластеров.
+        public int count() {
+            return count;
+        }
+
+        // Размер наибольшего кластера.
+        public int largest() {
+            return largest;
+        }
+
+        public int spanningSize() {
+            return spanningSize;
+        }
+
+        public Path output() {
+            return output;
+        }
+
+        /* Вывод результата */
+        public void print(PrintStream out) {
+            out.println("Решетка: " + heightGrid + " х " + widthGrid);
+            out.println("Стягивающий кластер: " + (spans ? "есть" : "нет"));
+            out.println("Количество кластеров: " + count);
+            out.println("Наибольший кластер: " + largest);
+            if (spanningSize > 0) {
+                out.println("Размер стягивающего кластера: " + spanningSize);
+            }
+            out.println("Изображение: " + output.toAbsolutePath());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,519 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * PercolationModel
+ *
+ * Параметры расчета вероятности образования стягивающего кластера Pc(p): размер решетки, количество итераций, зерно
+ * генератора, генератор решетки (LatticeGenerator), диапазон p и метод расчета - Монте-Карло с заданным количеством
+ * итераций для каждого p, алгоритм Ньюмана-Зиффа или адаптивный расчет (AdaptiveSweep). Параметры задаются
+ * методами set... или по ключу (set), как в сценарии диффузии:
+ *
+ *   name = percolation
+ *   heightGrid = 100
+ *   widthGrid = 100
+ *   depthGrid = 1                  # 1 - двумерная решетка
+ *   n = 1000                       # количество итераций для каждого p
+ *   seed = 2018
+ *   packed = false                 # битовая упаковка решетки
+ *   threads = 0                    # количество потоков, 0 - по количеству процессоров
+ *   generator = uniform            # см. LatticeGenerator.parse
+ *   method = monte_carlo           # monte_carlo, newman_ziff или adaptive
+ *   width = 0.06                   # ширина доверительного интервала для adaptive
+ *   pStart = 0.3
+ *   pEnd = 0.5
+ *   step = 0.01
+ *   statistics = false             # статистика кластеров (только monte_carlo)
+ *   statisticsFile = PercolationClusters.txt
+ *
+ * Статистика кластеров собирается только методом Монте-Карло: сочетание statistics = true с методом newman_ziff
+ * или adaptive отклоняется (IllegalArgumentException) при задании параметра по ключу и при расчете.
+ *
+ * Расчет (run) возвращает результат (Result) и ничего не выводит в консоль, поэтому одна модель используется и
+ * программой Percolation, и пакетным запуском Batch.
+ *
+ * @author Artur Manukian
+ */
+
+public class PercolationModel {
+
+    /* Метод расчета */
+    public enum Method {
+        MONTE_CARLO, // Заданное количество итераций для каждого p.
+        NEWMAN_ZIFF, // Вся кривая Pc(p) за один проход.
+        ADAPTIVE // Итерации до заданной ширины доверительного интервала.
+    }
+
+    private String name = "percolation";
+    private int heightGrid = 100;
+    private int widthGrid = 100;
+    // 1 - двумерная решетка.
+    private int depthGrid = 1;
+    private int n = 1000;
+    private long seed = 2018;
+    private boolean packed = false;
+    // 0 - по количеству процессоров.
+    private int threads = 0;
+    private LatticeGenerator generator = LatticeGenerator.uniform();
+    private Method method = Method.MONTE_CARLO;
+    private double width = 0.06;
+    private double pStart = 0.3;
+    private double pEnd = 0.5;
+    private double step = 0.01;
+    private boolean statistics = false;
+    private String statisticsFile = "PercolationClusters.txt";
+
+    /* Задание параметра по ключу */
+    public PercolationModel set(String key, String value) {
+        switch (key) {
+            case "name":
+                name = value;
+                break;
+            case "heightGrid":
+                heightGrid = Integer.parseInt(value);
+                break;
+            case "widthGrid":
+                widthGrid = Integer.parseInt(value);
+                break;
+            case "depthGrid":
+                depthGrid = Integer.parseInt(value);
+                break;
+            case "n":
+                n = Integer.parseInt(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "packed":
+                packed = Boolean.parseBoolean(value);
+                break;
+            case "threads":
+                threads = Integer.parseInt(value);
+                if (threads < 0) {
+                    throw new IllegalArgumentException("threads должен быть не меньше 0: " + value);
+                }
+                break;
+            case "generator":
+                generator = LatticeGenerator.parse(value);
+                break;
+            case "method":
+                method = Method.valueOf(value.toUpperCase(Locale.ROOT));
+                checkStatistics();
+                break;
+            case "width":
+                width = Double.parseDouble(value);
+                break;
+            case "pStart":
+                pStart = Double.parseDouble(value);
+                break;
+            case "pEnd":
+                pEnd = Double.parseDouble(value);
+                break;
+            case "step":
+                step = Double.parseDouble(value);
+                if (step <= 0) {
+                    throw new IllegalArgumentException("step должен быть больше 0: " + value);
+                }
+                break;
+            case "statistics":
+                statistics = Boolean.parseBoolean(value);
+                checkStatistics();
+                break;
+            case "statisticsFile":
+                statisticsFile = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный параметр: " + key);
+        }
+        return this;
+    }
+
+    // Статистика кластеров собирается только итерациями
+    // метода Монте-Карло.
+    private void checkStatistics() {
+        if (statistics && method != Method.MONTE_CARLO) {
+            throw new IllegalArgumentException("Статистика кластеров (statistics = true) собирается только методом "
+                    + "monte_carlo, задан метод " + method.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /* Заданный диапазон p */
+    // Значения накапливаются сложением шага, как в исходной программе.
+    public double[] values() {
+        int count = 0;
+        for (double p = pStart; p < pEnd + step; p += step) {
+            count++;
+        }
+        double[] values = new double[count];
+        count = 0;
+        for (double p = pStart; p < pEnd + step; p += step) {
+            values[count++] = p;
+        }
+        return values;
+    }
+
+    // Исполнитель итераций с заданными зерном, потоками и генератором.
+    public TrialExecutor executor() {
+        return new TrialExecutor(seed, threads(), packed).setGenerator(generator);
+    }
+
+    /* Расчет */
+    public Result run() throws IOException {
+        TrialExecutor executor = executor();
+        try {
+            return run(executor, null, null);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // checkpoint и metrics (могут быть null) используются только
+    // методом Монте-Карло. Исполнитель не останавливается.
+    public Result run(TrialExecutor executor, SweepCheckpoint checkpoint, SweepMetrics metrics) throws IOException {
+        checkStatistics();
+        double[] values = values();
+        int count = values.length;
+
+        /* Расчет алгоритмом Ньюмана-Зиффа */
+        // Каждая итерация дает порог образования стягивающего
+        // кластера, а Pc для любого p получается сверткой.
+        if (method == Method.NEWMAN_ZIFF) {
+            if (generator != LatticeGenerator.uniform()) {
+                throw new IllegalStateException("Алгоритм Ньюмана-Зиффа рассчитывает только решетки с одинаковой "
+                        + "степенью занятости узлов");
+            }
+            double[] r = executor.runNewmanZiff(heightGrid, widthGrid, depthGrid, n);
+            double[] pc = new double[count];
+            long[] trials = new long[count];
+            for (int k = 0; k < count; k++) {
+                pc[k] = NewmanZiff.canonical(r, values[k]);
+                trials[k] = n;
+            }
+            return new Result(this, values, trials, null, pc, Double.NaN, null);
+        }
+
+        /* Адаптивный расчет */
+        // Количество итераций для каждого p определяется шириной
+        // доверительного интервала, переход Pc через 0.5 уточняется
+        // делением отрезка пополам.
+        if (method == Method.ADAPTIVE) {
+            AdaptiveSweep.Result sweep = new AdaptiveSweep(executor, heightGrid, widthGrid, depthGrid)
+                    .setWidth(width).setMaxTrials(10 * n).run(values);
+            List<AdaptiveSweep.Point> points = sweep.points();
+            double[] p = new double[points.size()];
+            long[] trials = new long[points.size()];
+            long[] spanning = new long[points.size()];
+            double[] pc = new double[points.size()];
+            for (int k = 0; k < points.size(); k++) {
+                AdaptiveSweep.Point point = points.get(k);
+                p[k] = point.p();
+                trials[k] = point.trials();
+                spanning[k] = point.spanning();
+                pc[k] = point.pc();
+            }
+            return new Result(this, p, trials, spanning, pc, sweep.threshold(), null);
+        }
+
+        /* Расчет методом Монте-Карло */
+        // Итерации, восстановленные из контрольной точки,
+        // в статистику кластеров не входят.
+        ClusterStatistics[] clusterStatistics = statistics ? new ClusterStatistics[count] : null;
+        long[] spanning = executor.run(heightGrid, widthGrid, depthGrid, values, n, checkpoint, metrics,
+                clusterStatistics);
+        long[] trials = new long[count];
+        double[] pc = new double[count];
+        for (int k = 0; k < count; k++) {
+            trials[k] = n;
+            pc[k] = (double) spanning[k] / n;
+        }
+        if (statistics) {
+            ClusterStatistics.write(Paths.get(statisticsFile), values, clusterStatistics);
+        }
+        return new Result(this, values, trials, spanning, pc, Double.NaN, clusterStatistics);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public PercolationModel setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public int heightGrid() {
+        return heightGrid;
+    }
+
+    public PercolationModel setHeightGrid(int heightGrid) {
+        this.heightGrid = heightGrid;
+        return this;
+    }
+
+    public int widthGrid() {
+        return widthGrid;
+    }
+
+    public PercolationModel setWidthGrid(int widthGrid) {
+        this.widthGrid = widthGrid;
+        return this;
+    }
+
+    public int depthGrid() {
+        return depthGrid;
+    }
+
+    public PercolationModel setDepthGrid(int depthGrid) {
+        this.depthGrid = depthGrid;
+        return this;
+    }
+
+    public int n() {
+        return n;
+    }
+
+    public PercolationModel setN(int n) {
+        this.n = n;
+        return this;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    public PercolationModel setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public boolean packed() {
+        return packed;
+    }
+
+    public PercolationModel setPacked(boolean packed) {
+        this.packed = packed;
+        return this;
+    }
+
+    // Количество потоков: заданное или по количеству процессоров.
+    public int threads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public PercolationModel setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public LatticeGenerator generator() {
+        return generator;
+    }
+
+    public PercolationModel setGenerator(LatticeGenerator generator) {
+        this.generator = generator;
+        return this;
+    }
+
+    public Method method() {
+        return method;
+    }
+
+    public PercolationModel setMethod(Method method) {
+        this.method = method;
+        return this;
+    }
+
+    public double width() {
+        return width;
+    }
+
+    public PercolationModel setWidth(double width) {
+        this.width = width;
+        return this;
+    }
+
+    public double pStart() {
+        return pStart;
+    }
+
+    public double pEnd() {
+        return pEnd;
+    }
+
+    public double step() {
+        return step;
+    }
+
+    public PercolationModel setRange(double pStart, double pEnd, double step) {
+        this.pStart = pStart;
+        this.pEnd = pEnd;
+        this.step = step;
+        return this;
+    }
+
+    public boolean statistics() {
+        return statistics;
+    }
+
+    public String statisticsFile() {
+        return statisticsFile;
+    }
+
+    public PercolationModel setStatistics(boolean statistics, String statisticsFile) {
+        this.statistics = statistics;
+        this.statisticsFile = statisticsFile;
+        return this;
+    }
+
+    /* Результат расчета */
+    public static final class Result {
+
+        private final PercolationModel model;
+        private final Method method;
+        private final double[] p;
+        private final long[] trials;
+        // null для алгоритма Ньюмана-Зиффа.
+        private final long[] spanning;
+        private final double[] pc;
+        private final double threshold;
+        // null, если статистика кластеров не собиралась.
+        private final ClusterStatistics[] statistics;
+        // Количество итераций на каждое p, количество значений p
+        // заданного диапазона и файл статистики кластеров.
+        private final int n;
+        private final int count;
+        private final String statisticsFile;
+
+        Result(PercolationModel model, double[] p, long[] trials, long[] spanning, double[] pc, double threshold,
+                ClusterStatistics[] statistics) {
+            this.model = model;
+            this.method = model.method;
+            this.p = p;
+            this.trials = trials;
+            this.spanning = spanning;
+            this.pc = pc;
+            this.threshold = Double.isNaN(threshold) ? crossing(p, pc) : threshold;
+            this.statistics = statistics;
+            this.n = model.n;
+            this.count = model.values().length;
+            this.statisticsFile = model.statisticsFile;
+        }
+
+        // Линейная интерполяция p, при которой Pc переходит через 0.5.
+        private static double crossing(double[] p, double[] pc) {
+            for (int k = 0; k + 1 < p.length; k++) {
+                if ((pc[k] < 0.5) != (pc[k + 1] < 0.5)) {
+                    return p[k] + (0.5 - pc[k]) / (pc[k + 1] - pc[k]) * (p[k + 1] - p[k]);
+                }
+            }
+            return Double.NaN;
+        }
+
+        public PercolationModel model() {
+            return model;
+        }
+
+        public Method method() {
+            return method;
+        }
+
+        // Количество рассчитанных значений p (для adaptive - вместе
+        // с добавленными при уточнении порога, по возрастанию).
+        public int size() {
+            return p.length;
+        }
+
+        public double p(int k) {
+            return p[k];
+        }
+
+        public long trials(int k) {
+            return trials[k];
+        }
+
+        // Количество стягивающих кластеров; -1 для алгоритма Ньюмана-Зиффа.
+        public long spanning(int k) {
+            return spanning != null ? spanning[k] : -1;
+        }
+
+        public double pc(int k) {
+            return pc[k];
+        }
+
+        // 95-процентный доверительный интервал Вильсона для Pc.
+        public double[] interval(int k) {
+            if (spanning == null) {
+                return new double[] {Double.NaN, Double.NaN};
+            }
+            return Confidence.wilson(spanning[k], trials[k], Confidence.Z95);
+        }
+
+        // Оценка p, при которой Pc = 0.5: результат AdaptiveSweep или
+        // линейная интерполяция по соседним значениям p; NaN, если
+        // в диапазоне нет перехода через 0.5.
+        public double threshold() {
+            return threshold;
+        }
+
+        // Общее количество итераций.
+        public long trials() {
+            if (method == Method.NEWMAN_ZIFF) {
+                return n;
+            }
+            long total = 0;
+            for (long value : trials) {
+                total += value;
+            }
+            return total;
+        }
+
+        // Статистика кластеров для значения p (k) или null.
+        public ClusterStatistics statistics(int k) {
+            return statistics != null ? statistics[k] : null;
+        }
+
+        /* Вывод результата */
+        public void print(PrintStream out) {
+            for (int k = 0; k < p.length; k++) {
+                if (method == Method.ADAPTIVE) {
+                    double[] interval = interval(k);
+
+                    out.println("\nВероятность занятости узла: p = " + String.format(Locale.ENGLISH, "%.4f", p[k]));
+                    out.println("Итераций: " + trials[k] + ", стягивающих кластеров: " + spanning[k]);
+                    out.println("Вероятность образования стягивающего кластера: Pc = "
+                            + String.format(Locale.ENGLISH, "%.4f [%.4f, %.4f]", pc[k], interval[0], interval[1]));
+                    continue;
+                }
+                out.println("\nВероятность занятости узла: p = " + String.format(Locale.ENGLISH, "%(.2f", p[k]));
+                if (method == Method.NEWMAN_ZIFF) {
+                    out.println("Вероятность образования стягивающего кластера: Pc = "
+                            + String.format(Locale.ENGLISH, "%.4f", pc[k]));
+                    continue;
+                }
+                out.println("Стягивающих кластеров: " + spanning[k]);
+                out.println("Вероятность образования стягивающего кластера: Pc = " + pc[k]);
+                if (statistics != null) {
+                    ClusterStatistics clusters = statistics[k];
+                    out.println("Сила стягивающего кластера: P = "
+                            + String.format(Locale.ENGLISH, "%.4f ± %.4f", clusters.strength(),
+                                    clusters.strengthError())
+                            + ", средний размер кластера: "
+                            + String.format(Locale.ENGLISH, "%.2f", clusters.meanClusterSize())
+                            + ", длина корреляции: "
+                            + String.format(Locale.ENGLISH, "%.2f", clusters.correlationLength()));
+                }
+            }
+
+            if (method == Method.ADAPTIVE) {
+                out.println("\nВсего итераций: " + trials() + " (при " + n + " на каждое p: " + (long) count * n + ")");
+                out.println("Порог протекания (Pc = 0.5): p = " + String.format(Locale.ENGLISH, "%.4f", threshold));
+            }
+            if (statistics != null) {
+                out.println("\nСтатистика кластеров: " + statisticsFile);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * PngWriter
+ *
+ * Построчная запись изображения в формате PNG без хранения всего изображения в памяти. Строки сжимаются по мере
+ * поступления и записываются блоками IDAT ограниченного размера, поэтому память не зависит от высоты изображения.
+ * Поддерживаются оттенки серого (1 или 8 бит на пиксель) и палитра (8 бит на пиксель).
+ *
+ * @author Artur Manukian
+ */
+
+public class PngWriter implements Closeable {
+
+    /* Тип цвета PNG */
+    public static final int GRAYSCALE = 0;
+    public static final int INDEXED = 3;
+
+    // Размер сжатых данных, после которого записывается блок IDAT.
+    private static final int IDAT_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final int rowBytes;
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(IDAT_SIZE * 2);
+    private final DeflaterOutputStream deflater;
+    private final Deflater deflate = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private int rows;
+
+    // palette - цвета палитры 0xRRGGBB для типа INDEXED, иначе null.
+    public PngWriter(OutputStream out, int width, int height, int bitDepth, int colorType, int[] palette)
+            throws IOException {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Недопустимый размер изображения: " + width + " х " + height);
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.rowBytes = (int) (((long) width * bitDepth + 7) / 8);
+        this.deflater = new DeflaterOutputStream(compressed, deflate, 8192);
+
+        out.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = (byte) bitDepth;
+        header[9] = (byte) colorType;
+        chunk("IHDR", header, header.length);
+
+        if (colorType == INDEXED) {
+            byte[] colors = new byte[palette.length * 3];
+            for (int k = 0; k < palette.length; k++) {
+                colors[3 * k] = (byte) (palette[k] >> 16);
+                colors[3 * k + 1] = (byte) (palette[k] >> 8);
+                colors[3 * k + 2] = (byte) palette[k];
+            }
+            chunk("PLTE", colors, colors.length);
+        }
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    // Количество байтов в строке изображения.
+    public int rowBytes() {
+        return rowBytes;
+    }
+
+    /* Запись строки */
+    // row - упакованные пиксели строки (rowBytes байтов), фильтр не применяется.
+    public void writeRow(byte[] row) throws IOException {
+        if (rows == height) {
+            throw new IllegalStateException("Все строки изображения уже записаны");
+        }
+        deflater.write(0);
+        deflater.write(row, 0, rowBytes);
+        rows++;
+        if (compressed.size() >= IDAT_SIZE) {
+            flushData();
+        }
+    }
+
+    private void flushData() throws IOException {
+        if (compressed.size() > 0) {
+            chunk("IDAT", compressed.toByteArray(), compressed.size());
+            compressed.reset();
+        }
+    }
+
+    // Блок PNG: длина, тип, данные и CRC типа и данных.
+    private void chunk(String type, byte[] data, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] number = new byte[4];
+        putInt(number, 0, length);
+        out.write(number);
+        out.write(name);
+        out.write(data, 0, length);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        putInt(number, 0, (int) crc.getValue());
+        out.write(number);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /* Завершение изображения */
+    // Если записаны не все строки, выбрасывается IllegalStateException.
+    // При закрытии в try-with-resources после ошибки записи строки это
+    // исключение добавляется к исходному как подавленное.
+    @Override
+    public void close() throws IOException {
+        try (OutputStream stream = out) {
+            try {
+                if (rows != height) {
+                    throw new IllegalStateException("Записано строк: " + rows + " из " + height);
+                }
+                deflater.finish();
+                flushData();
+                chunk("IEND", new byte[0], 0);
+                stream.flush();
+            } finally {
+                deflate.end();
+            }
+        }
+    }
+}
\ No newline at end of file
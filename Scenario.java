@@ -0,0 +1,488 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Scenario
+ *
+ * Сценарий расчета диффузии загрязнений: размер сетки (двумерной или трехмерной), количество итераций, физические
+ * константы, разностная схема, граничные условия и произвольный список точечных и площадных источников. Сценарий
+ * задается в программе или читается из текстового файла, поэтому несколько сценариев можно рассчитать подряд без
+ * перекомпиляции.
+ *
+ * Формат файла - строки вида "ключ = значение", пустые строки и строки, начинающиеся с #, пропускаются:
+ *
+ *   name = chimneys
+ *   sizeGrid = 40
+ *   depthGrid = 1              # количество слоев сетки по z (с границами), 1 - двумерная задача
+ *   n = 100
+ *   lambda = 0.0267
+ *   ro = 1.165
+ *   c = 1005
+ *   tau = 0.01
+ *   h = 0.0015                 # необязательно, по умолчанию подбирается по условию устойчивости
+ *   scheme = explicit          # explicit или adi
+ *   boundary = dirichlet 0     # dirichlet со значением t или neumann (нулевой поток)
+ *   source = 20 15 1           # точечный источник: y x Q, на трехмерной сетке y x z Q
+ *   area = 10 10 3 3 0.5       # площадной источник: y x высота ширина Q (в каждом узле),
+ *                              # на трехмерной сетке y x z высота ширина глубина Q
+ *   output = DiffusionData.txt # файл результата
+ *   format = text              # text, float64 или float32
+ *   snapshot = 10              # запись каждого k-того слоя, 0 - только последнего
+ *   tolerance = 1e-6           # остановка, когда изменение поля за шаг меньше этой доли его максимума, 0 - нет
+ *   check = 10                 # изменение поля измеряется на каждом k-том шаге
+ *   multigrid = false          # true - стационарное поле многосеточным методом, без шагов по времени
+ *   threads = 0                # количество потоков расчета, 0 - по количеству процессоров
+ *
+ * @author Artur Manukian
+ */
+
+public class Scenario {
+
+    /* Источник загрязнения */
+    // Точечный источник - область 1 х 1. Для двумерной сетки z = 0.
+    public static final class Source {
+
+        private final int y;
+        private final int x;
+        private final int z;
+        private final int height;
+        private final int width;
+        private final int depth;
+        private final double q;
+
+        public Source(int y, int x, int height, int width, double q) {
+            this(y, x, 0, height, width, 1, q);
+        }
+
+        public Source(int y, int x, int z, int height, int width, int depth, double q) {
+            if (height < 1 || width < 1 || depth < 1) {
+                throw new IllegalArgumentException("Недопустимый размер источника: " + height + " х " + width
+                        + (depth > 1 ? " х " + depth : ""));
+            }
+            this.y = y;
+            this.x = x;
+            this.z = z;
+            this.height = height;
+            this.width = width;
+            this.depth = depth;
+            this.q = q;
+        }
+
+        public int y() {
+            return y;
+        }
+
+        public int x() {
+            return x;
+        }
+
+        public int z() {
+            return z;
+        }
+
+        public int height() {
+            return height;
+        }
+
+        public int width() {
+            return width;
+        }
+
+        public int depth() {
+            return depth;
+        }
+
+        public double q() {
+            return q;
+        }
+    }
+
+    private String name = "scenario";
+    private int sizeGrid = 40;
+    // 1 - двумерная сетка.
+    private int depthGrid = 1;
+    private int n = 100;
+    // Значения заданы для температуры 30 градусов Цельсия.
+    private double lambda = 0.0267;
+    private double ro = 1.165;
+    private double c = 1005;
+    private double tau = 0.01;
+    // 0 - подбор шага по условию устойчивости.
+    private double h = 0;
+    private DiffusionSolver.Scheme scheme = DiffusionSolver.Scheme.EXPLICIT;
+    private DiffusionSolver.Boundary boundary = DiffusionSolver.Boundary.DIRICHLET;
+    private double t = 0;
+    private final List<Source> sources = new ArrayList<Source>();
+    private String output = "DiffusionData.txt";
+    private SnapshotWriter.Format format = SnapshotWriter.Format.TEXT;
+    // 0 - запись только последнего временного слоя.
+    private int snapshot = 0;
+    // Стационарное состояние: допустимое изменение поля за шаг
+    // (0 - выполняются все n шагов) и период его измерения.
+    private double tolerance = 0;
+    private int check = 10;
+    // Расчет стационарного поля многосеточным методом.
+    private boolean multigrid = false;
+    // 0 - по количеству процессоров.
+    private int threads = 0;
+
+    /* Чтение сценария из файла */
+    public static Scenario load(Path path) throws IOException {
+        Scenario scenario = new Scenario();
+        String fileName = path.getFileName().toString();
+        scenario.name = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+
+        BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        try {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                if (separator < 0) {
+                    throw new IOException(path + ":" + number + ": ожидается \"ключ = значение\": " + line);
+                }
+                try {
+                    scenario.set(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + ":" + number + ": " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return scenario;
+    }
+
+    /* Задание параметра по ключу */
+    public Scenario set(String key, String value) {
+        String[] values = value.split("\\s+");
+        switch (key) {
+            case "name":
+                name = value;
+                break;
+            case "sizeGrid":
+                sizeGrid = Integer.parseInt(value);
+                break;
+            case "depthGrid":
+                depthGrid = Integer.parseInt(value);
+                break;
+            case "n":
+                n = Integer.parseInt(value);
+                break;
+            case "lambda":
+                lambda = Double.parseDouble(value);
+                break;
+            case "ro":
+                ro = Double.parseDouble(value);
+                break;
+            case "c":
+                c = Double.parseDouble(value);
+                break;
+            case "tau":
+                tau = Double.parseDouble(value);
+                break;
+            case "h":
+                h = Double.parseDouble(value);
+                break;
+            case "scheme":
+                scheme = DiffusionSolver.Scheme.valueOf(value.toUpperCase(Locale.ROOT));
+                break;
+            case "boundary":
+                boundary = DiffusionSolver.Boundary.valueOf(values[0].toUpperCase(Locale.ROOT));
+                t = values.length > 1 ? Double.parseDouble(values[1]) : 0;
+                break;
+            case "source":
+                expect(key, values, 3, 4);
+                if (values.length == 3) {
+                    addSource(Integer.parseInt(values[0]), Integer.parseInt(values[1]), Double.parseDouble(values[2]));
+                } else {
+                    addSource(Integer.parseInt(values[0]), Integer.parseInt(values[1]), Integer.parseInt(values[2]),
+                            Double.parseDouble(values[3]));
+                }
+                break;
+            case "area":
+                expect(key, values, 5, 7);
+                if (values.length == 5) {
+                    addArea(Integer.parseInt(values[0]), Integer.parseInt(values[1]), Integer.parseInt(values[2]),
+                            Integer.parseInt(values[3]), Double.parseDouble(values[4]));
+                } else {
+                    addArea(Integer.parseInt(values[0]), Integer.parseInt(values[1]), Integer.parseInt(values[2]),
+                            Integer.parseInt(values[3]), Integer.parseInt(values[4]), Integer.parseInt(values[5]),
+                            Double.parseDouble(values[6]));
+                }
+                break;
+            case "output":
+                output = value;
+                break;
+            case "format":
+                format = SnapshotWriter.Format.valueOf(value.toUpperCase(Locale.ROOT));
+                break;
+            case "snapshot":
+                snapshot = Integer.parseInt(value);
+                break;
+            case "tolerance":
+                tolerance = Double.parseDouble(value);
+                break;
+            case "check":
+                check = Integer.parseInt(value);
+                if (check < 1) {
+                    throw new IllegalArgumentException("check должен быть не меньше 1: " + value);
+                }
+                break;
+            case "multigrid":
+                multigrid = Boolean.parseBoolean(value);
+                break;
+            case "threads":
+                threads = Integer.parseInt(value);
+                if (threads < 0) {
+                    throw new IllegalArgumentException("threads должен быть не меньше 0: " + value);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный параметр: " + key);
+        }
+        return this;
+    }
+
+    // counts - допустимые количества значений (для двумерной и трехмерной сетки).
+    private static void expect(String key, String[] values, int... counts) {
+        for (int count : counts) {
+            if (values.length == count) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException(key + ": ожидается " + counts[0] + " или " + counts[counts.length - 1]
+                + " значений, получено " + values.length);
+    }
+
+    /* Шаг по сетке */
+    // Если шаг не задан, он подбирается таким образом, чтобы условие
+    // устойчивости было больше tau с условно минимальной разницей.
+    public double gridStep() {
+        if (h > 0) {
+            return h;
+        }
+        double step = 0;
+        for (double stability = 0; tau >= stability; step += 0.0005) {
+            stability = stability(step);
+        }
+        return step;
+    }
+
+    // Условие устойчивости явной схемы для шага по сетке h: на двумерной
+    // сетке tau <= ro * c * h^2 / (4 * lambda), на трехмерной - tau <=
+    // ro * c * h^2 / (6 * lambda).
+    public double stability(double h) {
+        if (depthGrid > 1) {
+            return (ro * c * Math.pow(h, 2)) / (6 * lambda);
+        }
+        return (ro * c * Math.pow(h, 2)) / (4 * lambda);
+    }
+
+    public Scenario addSource(int y, int x, double q) {
+        return addArea(y, x, 1, 1, q);
+    }
+
+    public Scenario addArea(int y, int x, int height, int width, double q) {
+        sources.add(new Source(y, x, height, width, q));
+        return this;
+    }
+
+    /* Источники на трехмерной сетке */
+    public Scenario addSource(int y, int x, int z, double q) {
+        return addArea(y, x, z, 1, 1, 1, q);
+    }
+
+    public Scenario addArea(int y, int x, int z, int height, int width, int depth, double q) {
+        sources.add(new Source(y, x, z, height, width, depth, q));
+        return this;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Scenario setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public int sizeGrid() {
+        return sizeGrid;
+    }
+
+    public Scenario setSizeGrid(int sizeGrid) {
+        this.sizeGrid = sizeGrid;
+        return this;
+    }
+
+    public int depthGrid() {
+        return depthGrid;
+    }
+
+    public Scenario setDepthGrid(int depthGrid) {
+        this.depthGrid = depthGrid;
+        return this;
+    }
+
+    public int n() {
+        return n;
+    }
+
+    public Scenario setN(int n) {
+        this.n = n;
+        return this;
+    }
+
+    public double lambda() {
+        return lambda;
+    }
+
+    public Scenario setLambda(double lambda) {
+        this.lambda = lambda;
+        return this;
+    }
+
+    public double ro() {
+        return ro;
+    }
+
+    public Scenario setRo(double ro) {
+        this.ro = ro;
+        return this;
+    }
+
+    public double c() {
+        return c;
+    }
+
+    public Scenario setC(double c) {
+        this.c = c;
+        return this;
+    }
+
+    public double tau() {
+        return tau;
+    }
+
+    public Scenario setTau(double tau) {
+        this.tau = tau;
+        return this;
+    }
+
+    public double h() {
+        return h;
+    }
+
+    public Scenario setH(double h) {
+        this.h = h;
+        return this;
+    }
+
+    public DiffusionSolver.Scheme scheme() {
+        return scheme;
+    }
+
+    public Scenario setScheme(DiffusionSolver.Scheme scheme) {
+        this.scheme = scheme;
+        return this;
+    }
+
+    public DiffusionSolver.Boundary boundary() {
+        return boundary;
+    }
+
+    public double t() {
+        return t;
+    }
+
+    public Scenario setBoundary(DiffusionSolver.Boundary boundary, double t) {
+        this.boundary = boundary;
+        this.t = t;
+        return this;
+    }
+
+    public List<Source> sources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    public String output() {
+        return output;
+    }
+
+    public Scenario setOutput(String output) {
+        this.output = output;
+        return this;
+    }
+
+    public SnapshotWriter.Format format() {
+        return format;
+    }
+
+    public Scenario setFormat(SnapshotWriter.Format format) {
+        this.format = format;
+        return this;
+    }
+
+    public int snapshot() {
+        return snapshot;
+    }
+
+    public Scenario setSnapshot(int snapshot) {
+        this.snapshot = snapshot;
+        return this;
+    }
+
+    public double tolerance() {
+        return tolerance;
+    }
+
+    public Scenario setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    public int check() {
+        return check;
+    }
+
+    public Scenario setCheck(int check) {
+        this.check = check;
+        return this;
+    }
+
+    public boolean multigrid() {
+        return multigrid;
+    }
+
+    public Scenario setMultigrid(boolean multigrid) {
+        this.multigrid = multigrid;
+        return this;
+    }
+
+    // Количество потоков расчета: заданное или по количеству процессоров.
+    public int threads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public Scenario setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+}
\ No newline at end of file
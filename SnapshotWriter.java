@@ -0,0 +1,325 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Formatter;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SnapshotWriter
+ *
+ * Запись временных слоев диффузии в файл в отдельном потоке. Решатель передает слой, который копируется в один из
+ * заранее выделенных буферов, и сразу продолжает расчет; ожидание возникает, только если все буферы еще записываются.
+ *
+ * Двоичный формат (все числа в порядке little-endian):
+ *   заголовок: "DIFS", версия (int), байт на значение - 8 или 4 (int), количество строк и столбцов (int, int),
+ *     для трехмерной сетки (версия 2) - количество слоев по z (int);
+ *   каждый слой: номер шага (int), время (double), значения внутренних узлов по строкам (double или float),
+ *     для трехмерной сетки - по слоям z.
+ *
+ * Текстовый формат совпадает с прежним выводом в DiffusionData.txt: значения внутренних узлов через пробел, строка
+ * сетки на строку файла, пустая строка после каждого слоя (для трехмерной сетки - после каждого слоя по z). Числа
+ * форматируются без учета локали системы.
+ *
+ * Трехмерный решатель (DiffusionSolver3D) хранит поле в массиве float, поэтому для трехмерной сетки буферы также
+ * имеют тип float.
+ *
+ * @author Artur Manukian
+ */
+
+public class SnapshotWriter implements Closeable {
+
+    /* Формат файла */
+    public enum Format {
+        FLOAT64, // Двоичный, double.
+        FLOAT32, // Двоичный, float.
+        TEXT // Текстовый.
+    }
+
+    private static final int VERSION = 1;
+    private static final int VERSION_3D = 2;
+    // Количество буферов для слоев, ожидающих записи.
+    private static final int BUFFERS = 2;
+    // Размер буфера для записи в канал.
+    private static final int CHUNK = 1 << 20;
+
+    private final Format format;
+    private final int sizeGrid;
+    private final int depthGrid;
+    private final FileChannel channel;
+    private final ByteBuffer chunk;
+    private final BufferedWriter text;
+    private final Formatter formatter;
+
+    private final ExecutorService thread;
+    private final BlockingQueue<double[]> buffers = new ArrayBlockingQueue<double[]>(BUFFERS);
+    private final BlockingQueue<float[]> floatBuffers = new ArrayBlockingQueue<float[]>(BUFFERS);
+    // Первая ошибка записи в фоновом потоке.
+    private volatile IOException failure;
+
+    public SnapshotWriter(Path path, Format format, int sizeGrid) throws IOException {
+        this(path, format, sizeGrid, 1);
+    }
+
+    // depthGrid - количество слоев сетки по z вместе с границами,
+    // 1 - двумерная сетка.
+    public SnapshotWriter(Path path, Format format, int sizeGrid, int depthGrid) throws IOException {
+        this.format = format;
+        this.sizeGrid = sizeGrid;
+        this.depthGrid = depthGrid;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        if (format == Format.TEXT) {
+            channel = null;
+            chunk = null;
+            text = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            formatter = new Formatter(text, Locale.ROOT);
+        } else {
+            text = null;
+            formatter = null;
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            chunk = ByteBuffer.allocateDirect(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            chunk.put(new byte[] {'D', 'I', 'F', 'S'});
+            chunk.putInt(depthGrid > 1 ? VERSION_3D : VERSION);
+            chunk.putInt(format == Format.FLOAT64 ? 8 : 4);
+            chunk.putInt(sizeGrid - 2);
+            chunk.putInt(sizeGrid - 2);
+            if (depthGrid > 1) {
+                chunk.putInt(depthGrid - 2);
+            }
+            flush();
+        }
+
+        for (int k = 0; k < BUFFERS; k++) {
+            if (depthGrid > 1) {
+                floatBuffers.add(new float[sizeGrid * sizeGrid * depthGrid]);
+            } else {
+                buffers.add(new double[sizeGrid * sizeGrid]);
+            }
+        }
+        thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /* Запись временного слоя */
+    // field - слой решателя (sizeGrid * sizeGrid), он копируется,
+    // поэтому после возврата решатель может изменять его.
+    public void write(final int step, final double time, double[] field) throws IOException {
+        if (depthGrid > 1) {
+            throw new IllegalStateException("Для трехмерной сетки слой передается массивом float");
+        }
+        checkFailure();
+        final double[] buffer;
+        try {
+            buffer = buffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Запись слоя прервана", e);
+        }
+        System.arraycopy(field, 0, buffer, 0, buffer.length);
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (failure == null) {
+                        if (format == Format.TEXT) {
+                            writeText(buffer);
+                        } else {
+                            writeBinary(step, time, buffer);
+                        }
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    buffers.add(buffer);
+                }
+            }
+        });
+    }
+
+    // field - слой трехмерного решателя (sizeGrid * sizeGrid * depthGrid).
+    public void write(final int step, final double time, float[] field) throws IOException {
+        if (depthGrid == 1) {
+            throw new IllegalStateException("Для двумерной сетки слой передается массивом double");
+        }
+        checkFailure();
+        final float[] buffer;
+        try {
+            buffer = floatBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Запись слоя прервана", e);
+        }
+        System.arraycopy(field, 0, buffer, 0, buffer.length);
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (failure == null) {
+                        if (format == Format.TEXT) {
+                            writeText(buffer);
+                        } else {
+                            writeBinary(step, time, buffer);
+                        }
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    floatBuffers.add(buffer);
+                }
+            }
+        });
+    }
+
+    private void writeBinary(int step, double time, double[] field) throws IOException {
+        chunk.putInt(step);
+        chunk.putDouble(time);
+        for (int i = 1; i < sizeGrid - 1; i++) {
+            putRow(field, i * sizeGrid + 1, sizeGrid - 2);
+        }
+        flush();
+    }
+
+    private void writeBinary(int step, double time, float[] field) throws IOException {
+        chunk.putInt(step);
+        chunk.putDouble(time);
+        for (int k = 1; k < depthGrid - 1; k++) {
+            for (int i = 1; i < sizeGrid - 1; i++) {
+                putRow(field, (k * sizeGrid + i) * sizeGrid + 1, sizeGrid - 2);
+            }
+        }
+        flush();
+    }
+
+    // Строки слоя переносятся в буфер канала целыми участками
+    // через представления DoubleBuffer и FloatBuffer.
+    private void putRow(double[] field, int offset, int count) throws IOException {
+        int bytes = format == Format.FLOAT64 ? 8 : 4;
+        while (count > 0) {
+            int fit = Math.min(count, chunk.remaining() / bytes);
+            if (fit == 0) {
+                flush();
+                continue;
+            }
+            if (bytes == 8) {
+                chunk.asDoubleBuffer().put(field, offset, fit);
+            } else {
+                FloatBuffer floats = chunk.asFloatBuffer();
+                for (int k = offset; k < offset + fit; k++) {
+                    floats.put((float) field[k]);
+                }
+            }
+            chunk.position(chunk.position() + fit * bytes);
+            offset += fit;
+            count -= fit;
+        }
+    }
+
+    private void putRow(float[] field, int offset, int count) throws IOException {
+        int bytes = format == Format.FLOAT64 ? 8 : 4;
+        while (count > 0) {
+            int fit = Math.min(count, chunk.remaining() / bytes);
+            if (fit == 0) {
+                flush();
+                continue;
+            }
+            if (bytes == 4) {
+                chunk.asFloatBuffer().put(field, offset, fit);
+            } else {
+                DoubleBuffer doubles = chunk.asDoubleBuffer();
+                for (int k = offset; k < offset + fit; k++) {
+                    doubles.put(field[k]);
+                }
+            }
+            chunk.position(chunk.position() + fit * bytes);
+            offset += fit;
+            count -= fit;
+        }
+    }
+
+    private void flush() throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        chunk.clear();
+    }
+
+    private void writeText(double[] field) throws IOException {
+        for (int i = 1; i < sizeGrid - 1; i++) {
+            int row = i * sizeGrid;
+            for (int k = row + 1; k < row + sizeGrid - 1; k++) {
+                formatter.format("%(.2f ", field[k]);
+            }
+            text.newLine();
+        }
+        text.newLine();
+        if (formatter.ioException() != null) {
+            throw formatter.ioException();
+        }
+    }
+
+    private void writeText(float[] field) throws IOException {
+        for (int k = 1; k < depthGrid - 1; k++) {
+            for (int i = 1; i < sizeGrid - 1; i++) {
+                int row = (k * sizeGrid + i) * sizeGrid;
+                for (int m = row + 1; m < row + sizeGrid - 1; m++) {
+                    formatter.format("%(.2f ", field[m]);
+                }
+                text.newLine();
+            }
+            text.newLine();
+        }
+        if (formatter.ioException() != null) {
+            throw formatter.ioException();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Ошибка записи слоя", failure);
+        }
+    }
+
+    /* Завершение записи */
+    // Ожидает запись всех переданных слоев и закрывает файл.
+    @Override
+    public void close() throws IOException {
+        thread.shutdown();
+        try {
+            thread.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (format == Format.TEXT) {
+            formatter.close();
+        } else {
+            channel.close();
+        }
+        checkFailure();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SourceIndex
+ *
+ * Разреженный индекс источников загрязнения для решателей уравнения диффузии: индексы узлов сетки в порядке
+ * возрастания и значения Q. Значения источников в одном узле складываются, поэтому площадные источники могут
+ * перекрываться. Решатель копирует индекс в массивы и на каждом шаге обходит только эти узлы.
+ *
+ * @author Artur Manukian
+ */
+
+public final class SourceIndex {
+
+    private final TreeMap<Integer, Double> sources = new TreeMap<Integer, Double>();
+
+    public void add(int index, double q) {
+        Double value = sources.get(index);
+        sources.put(index, value == null ? q : value + q);
+    }
+
+    public int size() {
+        return sources.size();
+    }
+
+    // Упорядоченные индексы узлов.
+    public int[] indices() {
+        int[] indices = new int[sources.size()];
+        int k = 0;
+        for (Integer index : sources.keySet()) {
+            indices[k++] = index;
+        }
+        return indices;
+    }
+
+    // Значения Q в порядке индексов узлов.
+    public double[] values() {
+        double[] values = new double[sources.size()];
+        int k = 0;
+        for (Map.Entry<Integer, Double> source : sources.entrySet()) {
+            values[k++] = source.getValue();
+        }
+        return values;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,512 @@
+import java.util.Arrays;
+
+/**
+ * SpanningCluster
+ *
+ * Поиск стягивающего кластера на перколяционной решетке (Lattice) без рекурсии. Протекание идет по свободным узлам
+ * от верхней границы решетки к нижней, заполненные узлы отмечаются в самой решетке. На трехмерной решетке у узла
+ * шесть соседей, а протекание идет от верхней грани (i = 1 во всех слоях) к нижней. У решетки с периодическими
+ * границами (Lattice.isPeriodic) соседями также являются первый и последний узлы каждой строки и узлы первого и
+ * последнего слоев.
+ *
+ * Имеются два режима:
+ * - заливка с явным стеком (fill), которая заменяет рекурсивный fillGrid и не зависит от размера стека потока;
+ * - разметка кластеров алгоритмом Хошена-Копельмана с системой непересекающихся множеств (label), которая
+ *   возвращает метки и размеры всех кластеров решетки;
+ * - подсчет кластеров двумерной решетки тем же алгоритмом по двум строкам (count): метки хранятся только для
+ *   предыдущей и текущей строк, поэтому память пропорциональна ширине решетки, а не ее площади.
+ *
+ * @author Artur Manukian
+ */
+
+public class SpanningCluster {
+
+    // Явный стек узлов для заливки. Хранит индексы узлов решетки
+    // и переиспользуется между вызовами, чтобы не выделять память
+    // на каждой итерации метода Монте-Карло.
+    private int[] stack = new int[1024];
+
+    // Буферы разметки кластеров. Как и стек, переиспользуются между
+    // вызовами label и увеличиваются только для большей решетки
+    // или большего количества меток.
+    private int[] labels = new int[0];
+    private int[] parent = new int[0];
+    private int[] compact = new int[0];
+    private int[] sizes = new int[0];
+    private boolean[] onTop = new boolean[0];
+
+    /* Заливка от всех свободных узлов верхней границы */
+    // Возвращает true, если протекание дошло до нижней границы,
+    // то есть образовался стягивающий кластер.
+    public boolean fill(Lattice lattice) {
+        int heightGrid = lattice.heightGrid();
+        int widthGrid = lattice.widthGrid();
+        int depthGrid = lattice.depthGrid();
+
+        for (int k = 1; k < depthGrid + 1; k++) {
+            for (int j = 1; j < widthGrid + 1; j++) {
+                fillFrom(lattice, lattice.index(1, j, k));
+            }
+        }
+
+        for (int k = 1; k < depthGrid + 1; k++) {
+            for (int j = 1; j < widthGrid + 1; j++) {
+                if (lattice.isFilled(lattice.index(heightGrid, j, k))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /* Заливка от одного узла */
+    // Итеративный аналог рекурсивного fillGrid: узел помечается
+    // заполненным при добавлении в стек, поэтому каждый узел
+    // попадает в стек не более одного раза. Возвращает количество
+    // заполненных узлов (0, если узел занят или уже заполнен).
+    public int fillFrom(Lattice lattice, int index) {
+        if (!lattice.tryFill(index)) {
+            return 0;
+        }
+        int stride = lattice.stride();
+        // Шаг между слоями, 0 - двумерная решетка.
+        int layer = lattice.depthGrid() > 1 ? lattice.layer() : 0;
+        boolean periodic = lattice.isPeriodic();
+        int widthGrid = lattice.widthGrid();
+        int depthGrid = lattice.depthGrid();
+        int filled = 0;
+        int top = 0;
+
+        stack[top++] = index;
+
+        while (top > 0) {
+            index = stack[--top];
+            filled++;
+
+            // Стек может понадобиться увеличить
+            // не более чем на восемь соседей.
+            if (top + 8 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            // Границы решетки заняты, поэтому
+            // проверка выхода за массив не нужна.
+            if (lattice.tryFill(index + 1)) {
+                stack[top++] = index + 1;
+            }
+            if (lattice.tryFill(index - 1)) {
+                stack[top++] = index - 1;
+            }
+            if (lattice.tryFill(index + stride)) {
+                stack[top++] = index + stride;
+            }
+            if (lattice.tryFill(index - stride)) {
+                stack[top++] = index - stride;
+            }
+            if (layer != 0) {
+                if (lattice.tryFill(index + layer)) {
+                    stack[top++] = index + layer;
+                }
+                if (lattice.tryFill(index - layer)) {
+                    stack[top++] = index - layer;
+                }
+            }
+            // Соседи через периодическую границу. Номер столбца
+            // не зависит от слоя, так как layer кратен stride.
+            if (periodic) {
+                int j = index % stride;
+                if (j == 1 && lattice.tryFill(index + widthGrid - 1)) {
+                    stack[top++] = index + widthGrid - 1;
+                }
+                if (j == widthGrid && lattice.tryFill(index - widthGrid + 1)) {
+                    stack[top++] = index - widthGrid + 1;
+                }
+                if (layer != 0) {
+                    int k = index / layer;
+                    if (k == 1 && lattice.tryFill(index + (depthGrid - 1) * layer)) {
+                        stack[top++] = index + (depthGrid - 1) * layer;
+                    }
+                    if (k == depthGrid && lattice.tryFill(index - (depthGrid - 1) * layer)) {
+                        stack[top++] = index - (depthGrid - 1) * layer;
+                    }
+                }
+            }
+        }
+        return filled;
+    }
+
+    /* Алгоритм Хошена-Копельмана */
+    // Один проход по строкам решетки: каждый свободный (или уже заполненный)
+    // узел получает метку верхнего, левого или (в трехмерной решетке)
+    // заднего соседа, а при встрече разных меток они объединяются. Второй
+    // проход заменяет предварительные метки корнями и нумерует кластеры
+    // подряд, начиная с 1. Метки хранятся по слоям, в слое - по строкам.
+    // На решетке с периодическими границами перед нумерацией объединяются
+    // метки первого и последнего столбцов (и слоев).
+    // Результат ссылается на буферы и действителен до следующего
+    // вызова label для этого объекта.
+    public Clusters label(Lattice lattice) {
+        int heightGrid = lattice.heightGrid();
+        int widthGrid = lattice.widthGrid();
+        int depthGrid = lattice.depthGrid();
+        int area = heightGrid * widthGrid;
+        int sites = area * depthGrid;
+        if (labels.length < sites) {
+            labels = new int[sites];
+        }
+        // Массив увеличивается, если предварительных меток
+        // окажется больше половины узлов.
+        if (parent.length < sites / 2 + 2) {
+            parent = new int[sites / 2 + 2];
+        }
+        int[] labels = this.labels;
+        int[] parent = this.parent;
+        int next = 1;
+
+        for (int k = 1; k < depthGrid + 1; k++) {
+            for (int i = 1; i < heightGrid + 1; i++) {
+                int row = ((k - 1) * heightGrid + i - 1) * widthGrid - 1;
+                int from = lattice.index(i, 0, k);
+                for (int j = 1; j < widthGrid + 1; j++) {
+                    if (!lattice.isFree(from + j)) {
+                        labels[row + j] = 0;
+                        continue;
+                    }
+                    int up = i > 1 ? labels[row - widthGrid + j] : 0;
+                    int left = j > 1 ? labels[row + j - 1] : 0;
+                    int back = k > 1 ? labels[row - area + j] : 0;
+
+                    int label;
+                    if (up == 0 && left == 0 && back == 0) {
+                        if (next == parent.length) {
+                            parent = Arrays.copyOf(parent, parent.length * 2);
+                        }
+                        parent[next] = next;
+                        label = next++;
+                    } else {
+                        label = find(parent, up != 0 ? up : left != 0 ? left : back);
+                        if (left != 0) {
+                            label = union(parent, label, left);
+                        }
+                        if (back != 0) {
+                            label = union(parent, label, back);
+                        }
+                    }
+                    labels[row + j] = label;
+                }
+            }
+        }
+
+        this.parent = parent;
+
+        if (lattice.isPeriodic()) {
+            for (int row = 0; row < heightGrid * depthGrid; row++) {
+                int first = labels[row * widthGrid];
+                int last = labels[row * widthGrid + widthGrid - 1];
+                if (first != 0 && last != 0) {
+                    union(parent, first, last);
+                }
+            }
+            if (depthGrid > 1) {
+                for (int m = 0; m < area; m++) {
+                    int first = labels[m];
+                    int last = labels[(depthGrid - 1) * area + m];
+                    if (first != 0 && last != 0) {
+                        union(parent, first, last);
+                    }
+                }
+            }
+        }
+
+        // Нумерация корней подряд и подсчет размеров кластеров.
+        if (compact.length < next) {
+            compact = new int[Math.max(next, compact.length * 2)];
+        }
+        int[] compact = this.compact;
+        int count = 0;
+        for (int k = 1; k < next; k++) {
+            if (find(parent, k) == k) {
+                compact[k] = ++count;
+            }
+        }
+        if (sizes.length < count + 1) {
+            sizes = new int[Math.max(count + 1, sizes.length * 2)];
+            onTop = new boolean[sizes.length];
+        } else {
+            Arrays.fill(sizes, 0, count + 1, 0);
+            Arrays.fill(onTop, 0, count + 1, false);
+        }
+        int[] sizes = this.sizes;
+        boolean[] onTop = this.onTop;
+        for (int k = 0; k < sites; k++) {
+            if (labels[k] != 0) {
+                labels[k] = compact[find(parent, labels[k])];
+                sizes[labels[k]]++;
+            }
+        }
+
+        // Стягивающим является кластер, метка которого встречается
+        // и в первой, и в последней строке (любого слоя).
+        for (int k = 0; k < depthGrid; k++) {
+            for (int j = 0; j < widthGrid; j++) {
+                onTop[labels[k * area + j]] = true;
+            }
+        }
+        int spanningLabel = 0;
+        for (int k = 0; k < depthGrid; k++) {
+            int lastRow = k * area + (heightGrid - 1) * widthGrid;
+            for (int j = 0; j < widthGrid; j++) {
+                int label = labels[lastRow + j];
+                if (label != 0 && onTop[label] && (spanningLabel == 0 || sizes[label] > sizes[spanningLabel])) {
+                    spanningLabel = label;
+                }
+            }
+        }
+
+        return new Clusters(heightGrid, widthGrid, depthGrid, labels, sizes, count, spanningLabel);
+    }
+
+    /* Подсчет кластеров по двум строкам */
+    // Алгоритм Хошена-Копельмана, в котором метки предыдущей строки
+    // после каждой строки нумеруются заново (1..carried), а новые метки
+    // текущей строки следуют за ними. Кластер, метки которого не
+    // встретились в текущей строке, завершен. Размер и признак касания
+    // верхней границы хранятся в корне множества. Количество кластеров,
+    // наибольший и стягивающий кластеры совпадают с результатом label.
+    public Counts count(Lattice lattice) {
+        if (lattice.depthGrid() > 1) {
+            throw new IllegalArgumentException("Подсчет кластеров по строкам реализован только для двумерной решетки");
+        }
+        int heightGrid = lattice.heightGrid();
+        int widthGrid = lattice.widthGrid();
+        int[] previous = new int[widthGrid];
+        int[] current = new int[widthGrid];
+        // В строке не больше (widthGrid + 1) / 2 кластеров, поэтому
+        // переносимых и новых меток вместе не больше widthGrid + 1.
+        int capacity = widthGrid + 2;
+        int[] parent = new int[capacity];
+        int[] sizes = new int[capacity];
+        boolean[] onTop = new boolean[capacity];
+        int[] renumber = new int[capacity];
+        int[] carriedSizes = new int[capacity];
+        boolean[] carriedTop = new boolean[capacity];
+        int carried = 0;
+        int count = 0;
+        int largest = 0;
+        int spanningSize = 0;
+
+        for (int i = 1; i < heightGrid + 1; i++) {
+            int next = carried + 1;
+            int from = lattice.index(i, 0);
+            for (int j = 0; j < widthGrid; j++) {
+                if (!lattice.isFree(from + j + 1)) {
+                    current[j] = 0;
+                    continue;
+                }
+                int up = previous[j];
+                int left = j > 0 ? current[j - 1] : 0;
+                int label;
+                if (up == 0 && left == 0) {
+                    parent[next] = next;
+                    sizes[next] = 0;
+                    onTop[next] = i == 1;
+                    label = next++;
+                } else {
+                    label = find(parent, up != 0 ? up : left);
+                    if (up != 0 && left != 0) {
+                        label = merge(parent, sizes, onTop, label, left);
+                    }
+                }
+                sizes[label]++;
+                current[j] = label;
+            }
+            if (lattice.isPeriodic() && current[0] != 0 && current[widthGrid - 1] != 0) {
+                merge(parent, sizes, onTop, current[0], current[widthGrid - 1]);
+            }
+
+            // Новые номера кластеров, продолжающихся в текущей строке.
+            int alive = 0;
+            for (int j = 0; j < widthGrid; j++) {
+                if (current[j] != 0) {
+                    int root = find(parent, current[j]);
+                    if (renumber[root] == 0) {
+                        renumber[root] = ++alive;
+                        carriedSizes[alive] = sizes[root];
+                        carriedTop[alive] = onTop[root];
+                    }
+                    current[j] = renumber[root];
+                }
+            }
+            // Завершенные кластеры: корни, не встретившиеся в строке.
+            for (int k = 1; k < next; k++) {
+                if (parent[k] == k && renumber[k] == 0) {
+                    count++;
+                    largest = Math.max(largest, sizes[k]);
+                }
+                renumber[k] = 0;
+            }
+            for (int k = 1; k < alive + 1; k++) {
+                parent[k] = k;
+                sizes[k] = carriedSizes[k];
+                onTop[k] = carriedTop[k];
+            }
+            carried = alive;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        // Кластеры последней строки; стягивающий - наибольший
+        // из них, касающийся верхней границы.
+        for (int k = 1; k < carried + 1; k++) {
+            count++;
+            largest = Math.max(largest, sizes[k]);
+            if (onTop[k]) {
+                spanningSize = Math.max(spanningSize, sizes[k]);
+            }
+        }
+        return new Counts(count, largest, spanningSize);
+    }
+
+    // Объединение с переносом размера и признака касания верхней границы в корень.
+    private static int merge(int[] parent, int[] sizes, boolean[] onTop, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a == b) {
+            return a;
+        }
+        int root = union(parent, a, b);
+        int other = root == a ? b : a;
+        sizes[root] += sizes[other];
+        onTop[root] |= onTop[other];
+        return root;
+    }
+
+    // Поиск корня с уполовиниванием пути.
+    private static int find(int[] parent, int k) {
+        while (parent[k] != k) {
+            parent[k] = parent[parent[k]];
+            k = parent[k];
+        }
+        return k;
+    }
+
+    // Объединение двух множеств, корнем становится меньшая метка.
+    private static int union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a < b) {
+            parent[b] = a;
+            return a;
+        }
+        parent[a] = b;
+        return b;
+    }
+
+    /**
+     * Результат подсчета кластеров без меток узлов: количество кластеров, размер наибольшего и размер стягивающего
+     * кластера (0, если его нет).
+     */
+    public static final class Counts {
+
+        private final int count;
+        private final int largest;
+        private final int spanningSize;
+
+        Counts(int count, int largest, int spanningSize) {
+            this.count = count;
+            this.largest = largest;
+            this.spanningSize = spanningSize;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public int largest() {
+            return largest;
+        }
+
+        public boolean spans() {
+            return spanningSize != 0;
+        }
+
+        public int spanningSize() {
+            return spanningSize;
+        }
+    }
+
+    /**
+     * Результат разметки кластеров: метки узлов (0 - занятый узел), размеры кластеров по меткам и метка
+     * стягивающего кластера (0, если его нет). Метки и размеры хранятся в буферах SpanningCluster.
+     */
+    public static final class Clusters {
+
+        private final int heightGrid;
+        private final int widthGrid;
+        private final int depthGrid;
+        private final int[] labels;
+        private final int[] sizes;
+        private final int count;
+        private final int spanningLabel;
+
+        Clusters(int heightGrid, int widthGrid, int depthGrid, int[] labels, int[] sizes, int count,
+                int spanningLabel) {
+            this.heightGrid = heightGrid;
+            this.widthGrid = widthGrid;
+            this.depthGrid = depthGrid;
+            this.labels = labels;
+            this.sizes = sizes;
+            this.count = count;
+            this.spanningLabel = spanningLabel;
+        }
+
+        // Количество кластеров.
+        public int count() {
+            return count;
+        }
+
+        // Метка узла в координатах решетки (1..heightGrid, 1..widthGrid).
+        public int labelAt(int i, int j) {
+            return labels[(i - 1) * widthGrid + j - 1];
+        }
+
+        // Метка узла (i, j) в слое k = 1..depthGrid.
+        public int labelAt(int i, int j, int k) {
+            return labels[((k - 1) * heightGrid + i - 1) * widthGrid + j - 1];
+        }
+
+        // Размер кластера с заданной меткой.
+        public int size(int label) {
+            return sizes[label];
+        }
+
+        // Размер наибольшего кластера.
+        public int largest() {
+            int max = 0;
+            for (int k = 1; k < count + 1; k++) {
+                max = Math.max(max, sizes[k]);
+            }
+            return max;
+        }
+
+        public boolean spans() {
+            return spanningLabel != 0;
+        }
+
+        public int spanningLabel() {
+            return spanningLabel;
+        }
+
+        public int heightGrid() {
+            return heightGrid;
+        }
+
+        public int widthGrid() {
+            return widthGrid;
+        }
+
+        public int depthGrid() {
+            return depthGrid;
+        }
+    }
+}
\ No newline at end of file
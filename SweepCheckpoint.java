@@ -0,0 +1,172 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * SweepCheckpoint
+ *
+ * Контрольная точка расчета методом Монте-Карло (TrialExecutor), позволяющая продолжить прерванный расчет с места
+ * остановки. Генератор каждого блока итераций полностью определяется главным зерном, номером значения p и номером
+ * блока, поэтому состояние генераторов не нужно сохранять: достаточно зерна, параметров расчета и количества
+ * стягивающих кластеров для каждого завершенного блока. Незавершенные блоки повторяются с начала, и результат
+ * продолженного расчета совпадает с результатом непрерывного.
+ *
+ * Формат файла (DataOutputStream): "PCHK", версия, зерно, размер решетки (высота, ширина, количество слоев),
+ * генератор решетки (строка UTF), количество итераций, размер блока, значения p, затем для каждого блока количество
+ * стягивающих кластеров или -1, если блок не завершен. Файл записывается во временный файл и переименовывается,
+ * поэтому при остановке программы во время записи остается предыдущая контрольная точка.
+ *
+ * @author Artur Manukian
+ */
+
+public class SweepCheckpoint {
+
+    private static final int MAGIC = 0x5043484b; // "PCHK"
+    private static final int VERSION = 3;
+    // Блок не завершен.
+    private static final int PENDING = -1;
+
+    private final Path path;
+    private final long seed;
+    private final int heightGrid;
+    private final int widthGrid;
+    private final int depthGrid;
+    // Описание генератора решетки (LatticeGenerator.toString).
+    private final String generator;
+    private final int n;
+    private final double[] p;
+    private final AtomicIntegerArray counts;
+
+    private SweepCheckpoint(Path path, long seed, int heightGrid, int widthGrid, int depthGrid, String generator,
+            double[] p, int n) {
+        this.path = path;
+        this.seed = seed;
+        this.heightGrid = heightGrid;
+        this.widthGrid = widthGrid;
+        this.depthGrid = depthGrid;
+        this.generator = generator;
+        this.n = n;
+        this.p = p.clone();
+        this.counts = new AtomicIntegerArray(p.length * TrialExecutor.blocks(n));
+        for (int index = 0; index < counts.length(); index++) {
+            counts.set(index, PENDING);
+        }
+    }
+
+    /* Открытие контрольной точки */
+    // Если файл существует, из него читаются завершенные блоки;
+    // параметры расчета должны совпадать с сохраненными.
+    public static SweepCheckpoint open(Path path, long seed, int heightGrid, int widthGrid, int depthGrid, double[] p,
+            int n) throws IOException {
+        return open(path, seed, heightGrid, widthGrid, depthGrid, LatticeGenerator.uniform(), p, n);
+    }
+
+    public static SweepCheckpoint open(Path path, long seed, int heightGrid, int widthGrid, int depthGrid,
+            LatticeGenerator generator, double[] p, int n) throws IOException {
+        SweepCheckpoint checkpoint = new SweepCheckpoint(path, seed, heightGrid, widthGrid, depthGrid,
+                generator.toString(), p, n);
+        if (Files.exists(path)) {
+            checkpoint.load();
+        }
+        return checkpoint;
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + ": файл не является контрольной точкой");
+            }
+            long savedSeed = in.readLong();
+            int savedHeight = in.readInt();
+            int savedWidth = in.readInt();
+            int savedDepth = in.readInt();
+            String savedGenerator = in.readUTF();
+            int savedN = in.readInt();
+            int savedBlock = in.readInt();
+            double[] savedP = new double[in.readInt()];
+            for (int k = 0; k < savedP.length; k++) {
+                savedP[k] = in.readDouble();
+            }
+            if (savedSeed != seed || savedHeight != heightGrid || savedWidth != widthGrid || savedDepth != depthGrid
+                    || !savedGenerator.equals(generator) || savedN != n || savedBlock != TrialExecutor.BLOCK
+                    || !Arrays.equals(savedP, p)) {
+                throw new IOException(path + ": контрольная точка относится к другому расчету");
+            }
+            for (int index = 0; index < counts.length(); index++) {
+                counts.set(index, in.readInt());
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /* Запись контрольной точки */
+    // Может вызываться из любого потока во время расчета.
+    public synchronized void save() throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeInt(heightGrid);
+            out.writeInt(widthGrid);
+            out.writeInt(depthGrid);
+            out.writeUTF(generator);
+            out.writeInt(n);
+            out.writeInt(TrialExecutor.BLOCK);
+            out.writeInt(p.length);
+            for (double value : p) {
+                out.writeDouble(value);
+            }
+            for (int index = 0; index < counts.length(); index++) {
+                out.writeInt(counts.get(index));
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Удаление файла после завершения расчета.
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    public boolean isDone(int index) {
+        return counts.get(index) != PENDING;
+    }
+
+    // Количество стягивающих кластеров завершенного блока.
+    public int count(int index) {
+        return counts.get(index);
+    }
+
+    public void complete(int index, int count) {
+        counts.set(index, count);
+    }
+
+    // Количество завершенных итераций.
+    public long trials() {
+        int blocksPerP = TrialExecutor.blocks(n);
+        long trials = 0;
+        for (int index = 0; index < counts.length(); index++) {
+            if (isDone(index)) {
+                trials += TrialExecutor.trials(index % blocksPerP, n);
+            }
+        }
+        return trials;
+    }
+
+    public Path path() {
+        return path;
+    }
+}
\ No newline at end of file
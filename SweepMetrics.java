@@ -0,0 +1,226 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * SweepMetrics
+ *
+ * Показатели выполняемого расчета методом Монте-Карло: скорость в итерациях и узлах в секунду, оценка оставшегося
+ * времени и текущая оценка Pc с доверительным интервалом Вильсона для каждого значения p. TrialExecutor сообщает о
+ * каждом завершенном блоке итераций, показатели читаются из любого потока снимком (snapshot) или через JMX.
+ *
+ * Итерации, восстановленные из контрольной точки, учитываются в Pc и в количестве выполненных итераций, но не в
+ * скорости расчета.
+ *
+ * @author Artur Manukian
+ */
+
+public class SweepMetrics implements SweepMetricsMXBean {
+
+    private final double[] p;
+    private final long sites;
+    private final long totalTrials;
+    private final AtomicLongArray trials;
+    private final AtomicLongArray spanning;
+    // Итерации, выполненные с начала работы программы.
+    private final LongAdder completed = new LongAdder();
+    private final long start = System.nanoTime();
+
+    private ObjectName name;
+
+    public SweepMetrics(int heightGrid, int widthGrid, int depthGrid, double[] p, int n) {
+        this.p = p.clone();
+        this.sites = (long) heightGrid * widthGrid * depthGrid;
+        this.totalTrials = (long) p.length * n;
+        this.trials = new AtomicLongArray(p.length);
+        this.spanning = new AtomicLongArray(p.length);
+    }
+
+    /* Учет завершенного блока */
+    public void record(int pIndex, int blockTrials, int blockSpanning) {
+        trials.addAndGet(pIndex, blockTrials);
+        spanning.addAndGet(pIndex, blockSpanning);
+        completed.add(blockTrials);
+    }
+
+    // Блок, восстановленный из контрольной точки.
+    public void restore(int pIndex, int blockTrials, int blockSpanning) {
+        trials.addAndGet(pIndex, blockTrials);
+        spanning.addAndGet(pIndex, blockSpanning);
+    }
+
+    /* Регистрация в JMX */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        name = new ObjectName("GraduateWork:type=Percolation");
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    public void unregister() throws JMException {
+        if (name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    /* Снимок показателей */
+    public Snapshot snapshot() {
+        long elapsed = System.nanoTime() - start;
+        long done = 0;
+        long[] pTrials = new long[p.length];
+        long[] pSpanning = new long[p.length];
+        for (int k = 0; k < p.length; k++) {
+            // Количество стягивающих кластеров читается первым,
+            // чтобы оценка Pc не превышала 1 при чтении во время расчета.
+            pSpanning[k] = spanning.get(k);
+            pTrials[k] = trials.get(k);
+            done += pTrials[k];
+        }
+        return new Snapshot(p, pTrials, pSpanning, totalTrials, done, completed.sum(), sites, elapsed);
+    }
+
+    @Override
+    public long getTrials() {
+        return snapshot().trials();
+    }
+
+    @Override
+    public long getTotalTrials() {
+        return totalTrials;
+    }
+
+    @Override
+    public double getTrialsPerSecond() {
+        return snapshot().trialsPerSecond();
+    }
+
+    @Override
+    public double getSitesPerSecond() {
+        return snapshot().sitesPerSecond();
+    }
+
+    @Override
+    public double getEtaSeconds() {
+        return snapshot().etaSeconds();
+    }
+
+    @Override
+    public double[] getP() {
+        return p.clone();
+    }
+
+    @Override
+    public double[] getPc() {
+        Snapshot snapshot = snapshot();
+        double[] pc = new double[p.length];
+        for (int k = 0; k < p.length; k++) {
+            pc[k] = snapshot.pc(k);
+        }
+        return pc;
+    }
+
+    @Override
+    public double[] getPcLower() {
+        Snapshot snapshot = snapshot();
+        double[] lower = new double[p.length];
+        for (int k = 0; k < p.length; k++) {
+            lower[k] = snapshot.interval(k)[0];
+        }
+        return lower;
+    }
+
+    @Override
+    public double[] getPcUpper() {
+        Snapshot snapshot = snapshot();
+        double[] upper = new double[p.length];
+        for (int k = 0; k < p.length; k++) {
+            upper[k] = snapshot.interval(k)[1];
+        }
+        return upper;
+    }
+
+    /* Снимок */
+    public static final class Snapshot {
+
+        private final double[] p;
+        private final long[] trials;
+        private final long[] spanning;
+        private final long totalTrials;
+        private final long done;
+        private final long completed;
+        private final long sites;
+        private final long elapsed;
+
+        Snapshot(double[] p, long[] trials, long[] spanning, long totalTrials, long done, long completed, long sites,
+                long elapsed) {
+            this.p = p;
+            this.trials = trials;
+            this.spanning = spanning;
+            this.totalTrials = totalTrials;
+            this.done = done;
+            this.completed = completed;
+            this.sites = sites;
+            this.elapsed = elapsed;
+        }
+
+        // Выполнено итераций, включая восстановленные.
+        public long trials() {
+            return done;
+        }
+
+        public long totalTrials() {
+            return totalTrials;
+        }
+
+        public double elapsedSeconds() {
+            return elapsed / 1e9;
+        }
+
+        public double trialsPerSecond() {
+            return elapsed > 0 ? completed / elapsedSeconds() : 0;
+        }
+
+        public double sitesPerSecond() {
+            return trialsPerSecond() * sites;
+        }
+
+        // Оценка оставшегося времени, с; бесконечность,
+        // пока не завершен ни один блок.
+        public double etaSeconds() {
+            double rate = trialsPerSecond();
+            return rate > 0 ? (totalTrials - done) / rate : Double.POSITIVE_INFINITY;
+        }
+
+        // Количество значений p.
+        public int pCount() {
+            return p.length;
+        }
+
+        public double p(int pIndex) {
+            return p[pIndex];
+        }
+
+        public long trials(int pIndex) {
+            return trials[pIndex];
+        }
+
+        public long spanning(int pIndex) {
+            return spanning[pIndex];
+        }
+
+        public double pc(int pIndex) {
+            return trials[pIndex] > 0 ? (double) spanning[pIndex] / trials[pIndex] : Double.NaN;
+        }
+
+        // 95-процентный доверительный интервал Pc.
+        public double[] interval(int pIndex) {
+            return Confidence.wilson(spanning[pIndex], trials[pIndex], Confidence.Z95);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,33 @@
+/**
+ * SweepMetricsMXBean
+ *
+ * Показатели выполняемого расчета методом Монте-Карло, доступные через JMX (например, в jconsole) под именем
+ * GraduateWork:type=Percolation.
+ *
+ * @author Artur Manukian
+ */
+
+public interface SweepMetricsMXBean {
+
+    // Выполнено итераций, включая восстановленные из контрольной точки.
+    long getTrials();
+
+    long getTotalTrials();
+
+    double getTrialsPerSecond();
+
+    double getSitesPerSecond();
+
+    // Оценка оставшегося времени, с.
+    double getEtaSeconds();
+
+    double[] getP();
+
+    // Текущая оценка Pc для каждого p и границы
+    // 95-процентного доверительного интервала.
+    double[] getPc();
+
+    double[] getPcLower();
+
+    double[] getPcUpper();
+}
\ No newline at end of file
@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * TrialExecutor
+ *
+ * Параллельное выполнение итераций метода Монте-Карло для задачи узлов. Итерации всех значений p разбиваются на блоки
+ * фиксированного размера, которые распределяются по потокам пула ForkJoin. Каждый блок использует собственный
+ * генератор SplittableRandom, зерно которого вычисляется из главного зерна, номера значения p и номера блока, поэтому
+ * результат не зависит от количества потоков и порядка выполнения блоков.
+ *
+ * Счетчики стягивающих кластеров записываются каждым блоком в свою ячейку массива и суммируются после завершения
+ * всех блоков, поэтому потоки не конкурируют за общий счетчик. Завершенные блоки могут отмечаться в контрольной
+ * точке (SweepCheckpoint), из которой прерванный расчет продолжается без повторения этих блоков, и учитываться в
+ * показателях расчета (SweepMetrics).
+ *
+ * При запросе статистики кластеров (ClusterStatistics) итерации размечают кластеры алгоритмом Хошена-Копельмана
+ * вместо заливки, поэтому статистика рассчитывается по тем же решеткам, что и вероятность образования стягивающего
+ * кластера. Каждый поток накапливает статистику в собственных накопителях, которые объединяются после завершения
+ * всех блоков.
+ *
+ * Решетки заполняются генератором (LatticeGenerator), по умолчанию - с одинаковой степенью занятости узлов. Расчет
+ * алгоритмом Ньюмана-Зиффа генератор не использует и относится только к таким решеткам. Его блоки получают зерна из
+ * отдельной области, поэтому они не повторяют последовательности блоков метода Монте-Карло при том же главном зерне.
+ *
+ * @author Artur Manukian
+ */
+
+public class TrialExecutor {
+
+    // Количество итераций в одном блоке.
+    public static final int BLOCK = 64;
+
+    // Области зерен блоков: метод Монте-Карло и алгоритм Ньюмана-Зиффа.
+    // Область 0 сохраняет прежние зерна блоков метода Монте-Карло.
+    private static final long MONTE_CARLO = 0;
+    private static final long NEWMAN_ZIFF = 0x632BE59BD9B4E019L;
+
+    private final ForkJoinPool pool;
+    private final long seed;
+    // Битовая упаковка решеток.
+    private final boolean packed;
+    private LatticeGenerator generator = LatticeGenerator.uniform();
+
+    // Рабочая решетка и заливка для каждого потока,
+    // чтобы не выделять их заново для каждого блока.
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>();
+    private final ThreadLocal<NewmanZiff> sweeps = new ThreadLocal<NewmanZiff>();
+
+    public TrialExecutor(long seed, int threads, boolean packed) {
+        this.seed = seed;
+        this.packed = packed;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public TrialExecutor(long seed, boolean packed) {
+        this(seed, Runtime.getRuntime().availableProcessors(), packed);
+    }
+
+    public TrialExecutor(long seed) {
+        this(seed, false);
+    }
+
+    public TrialExecutor setGenerator(LatticeGenerator generator) {
+        this.generator = generator;
+        return this;
+    }
+
+    public LatticeGenerator generator() {
+        return generator;
+    }
+
+    /* Расчет количества стягивающих кластеров для каждого значения p */
+    // Возвращает массив, где i-тый элемент - количество стягивающих
+    // кластеров из n итераций для вероятности занятости узла p[i].
+    public long[] run(int heightGrid, int widthGrid, double[] p, int n) {
+        return run(heightGrid, widthGrid, 1, p, n, null, null);
+    }
+
+    // depthGrid - количество слоев решетки (1 - двумерная решетка),
+    // checkpoint - контрольная точка: завершенные блоки берутся из нее,
+    // остальные отмечаются в ней по завершении; metrics - показатели
+    // расчета. Оба параметра могут быть null.
+    public long[] run(int heightGrid, int widthGrid, int depthGrid, double[] p, int n, SweepCheckpoint checkpoint,
+            SweepMetrics metrics) {
+        return run(heightGrid, widthGrid, depthGrid, p, n, checkpoint, metrics, null);
+    }
+
+    // statistics - массив длины p.length, в который записывается статистика
+    // кластеров для каждого значения p, или null. Статистика учитывает
+    // только итерации, выполненные в этом вызове (без восстановленных
+    // из контрольной точки).
+    public long[] run(final int heightGrid, final int widthGrid, final int depthGrid, final double[] p, final int n,
+            final SweepCheckpoint checkpoint, final SweepMetrics metrics, ClusterStatistics[] statistics) {
+        // Накопители статистики каждого потока.
+        final List<ClusterStatistics[]> accumulators = Collections.synchronizedList(
+                new ArrayList<ClusterStatistics[]>());
+        final ThreadLocal<ClusterStatistics[]> local = new ThreadLocal<ClusterStatistics[]>() {
+            @Override
+            protected ClusterStatistics[] initialValue() {
+                ClusterStatistics[] accumulator = new ClusterStatistics[p.length];
+                for (int k = 0; k < p.length; k++) {
+                    accumulator[k] = new ClusterStatistics(heightGrid, widthGrid, depthGrid);
+                }
+                accumulators.add(accumulator);
+                return accumulator;
+            }
+        };
+        final boolean collect = statistics != null;
+        final int blocksPerP = blocks(n);
+        final int[] blockCounts = new int[p.length * blocksPerP];
+
+        // Номера блоков, которые еще не выполнены.
+        final int[] pending = new int[blockCounts.length];
+        int pendingCount = 0;
+        for (int index = 0; index < blockCounts.length; index++) {
+            if (checkpoint != null && checkpoint.isDone(index)) {
+                blockCounts[index] = checkpoint.count(index);
+                if (metrics != null) {
+                    metrics.restore(index / blocksPerP, trials(index % blocksPerP, n), blockCounts[index]);
+                }
+            } else {
+                pending[pendingCount++] = index;
+            }
+        }
+
+        pool.invoke(new Blocks(new Blocks.Block() {
+            @Override
+            public void run(int k) {
+                int index = pending[k];
+                int pIndex = index / blocksPerP;
+                int block = index % blocksPerP;
+                int trials = trials(block, n);
+                int counter = block(heightGrid, widthGrid, depthGrid, p[pIndex], pIndex, block, trials,
+                        collect ? local.get()[pIndex] : null);
+                blockCounts[index] = counter;
+                if (checkpoint != null) {
+                    checkpoint.complete(index, counter);
+                }
+                if (metrics != null) {
+                    metrics.record(pIndex, trials, counter);
+                }
+            }
+        }, 0, pendingCount));
+
+        if (statistics != null) {
+            for (int k = 0; k < p.length; k++) {
+                statistics[k] = new ClusterStatistics(heightGrid, widthGrid, depthGrid);
+                for (ClusterStatistics[] accumulator : accumulators) {
+                    statistics[k].merge(accumulator[k]);
+                }
+            }
+        }
+
+        long[] counters = new long[p.length];
+        for (int index = 0; index < blockCounts.length; index++) {
+            counters[index / blocksPerP] += blockCounts[index];
+        }
+        return counters;
+    }
+
+    /* Расчет заданных блоков итераций */
+    // Для каждого k выполняются полные блоки first[k]..first[k]+count[k]-1
+    // для вероятности p[k] с генераторами номера ids[k]. Возвращает
+    // количество стягивающих кластеров для каждого k. Результат зависит
+    // только от номеров блоков, поэтому выборку можно наращивать порциями.
+    public long[] runBlocks(int heightGrid, int widthGrid, double[] p, int[] ids, int[] first, int[] count) {
+        return runBlocks(heightGrid, widthGrid, 1, p, ids, first, count);
+    }
+
+    public long[] runBlocks(final int heightGrid, final int widthGrid, final int depthGrid, final double[] p,
+            final int[] ids, final int[] first, int[] count) {
+        int total = 0;
+        for (int k = 0; k < p.length; k++) {
+            total += count[k];
+        }
+        // Значение p и номер блока для каждого блока работы.
+        final int[] owners = new int[total];
+        final int[] blocks = new int[total];
+        for (int k = 0, index = 0; k < p.length; k++) {
+            for (int b = 0; b < count[k]; b++, index++) {
+                owners[index] = k;
+                blocks[index] = first[k] + b;
+            }
+        }
+        final int[] blockCounts = new int[total];
+
+        pool.invoke(new Blocks(new Blocks.Block() {
+            @Override
+            public void run(int index) {
+                int k = owners[index];
+                blockCounts[index] = block(heightGrid, widthGrid, depthGrid, p[k], ids[k], blocks[index], BLOCK, null);
+            }
+        }, 0, total));
+
+        long[] counters = new long[p.length];
+        for (int index = 0; index < total; index++) {
+            counters[owners[index]] += blockCounts[index];
+        }
+        return counters;
+    }
+
+    /* Расчет всей кривой Pc(p) алгоритмом Ньюмана-Зиффа */
+    // Возвращает микроканоническую вероятность R(n) по n итерациям,
+    // из которой NewmanZiff.canonical получает Pc для любого p.
+    public double[] runNewmanZiff(int heightGrid, int widthGrid, int n) {
+        return runNewmanZiff(heightGrid, widthGrid, 1, n);
+    }
+
+    public double[] runNewmanZiff(final int heightGrid, final int widthGrid, final int depthGrid, final int n) {
+        final int blocks = blocks(n);
+        final int[] thresholds = new int[n];
+
+        pool.invoke(new Blocks(new Blocks.Block() {
+            @Override
+            public void run(int block) {
+                int trials = trials(block, n);
+                SplittableRandom random = random(NEWMAN_ZIFF, 0, block);
+                NewmanZiff sweep = sweep(heightGrid, widthGrid, depthGrid);
+                for (int k = 0; k < trials; k++) {
+                    thresholds[block * BLOCK + k] = sweep.threshold(random);
+                }
+            }
+        }, 0, blocks));
+
+        return NewmanZiff.microcanonical(thresholds, heightGrid * widthGrid * depthGrid);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // Один блок итераций, возвращает количество стягивающих кластеров.
+    // statistics - накопитель статистики кластеров потока или null.
+    private int block(int heightGrid, int widthGrid, int depthGrid, double p, int pIndex, int block, int trials,
+            ClusterStatistics statistics) {
+        SplittableRandom random = random(MONTE_CARLO, pIndex, block);
+        Workspace workspace = workspace(heightGrid, widthGrid, depthGrid);
+        int counter = 0;
+        for (int k = 0; k < trials; k++) {
+            if (workspace.trial(generator, random, p, statistics)) {
+                counter++;
+            }
+        }
+        return counter;
+    }
+
+    // Количество блоков для n итераций.
+    static int blocks(int n) {
+        return (n + BLOCK - 1) / BLOCK;
+    }
+
+    // Количество итераций в блоке с номером block.
+    static int trials(int block, int n) {
+        return Math.min(BLOCK, n - block * BLOCK);
+    }
+
+    /* Генератор для блока */
+    // Зерно блока получается перемешиванием главного зерна, измененного
+    // константой области, с номером значения p и номером блока
+    // (финализатор SplitMix64).
+    SplittableRandom random(long domain, int pIndex, int block) {
+        long z = (seed ^ domain) + 0x9E3779B97F4A7C15L * (((long) pIndex << 32) + block + 1);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    private Workspace workspace(int heightGrid, int widthGrid, int depthGrid) {
+        Workspace workspace = workspaces.get();
+        if (workspace == null || workspace.lattice.heightGrid() != heightGrid
+                || workspace.lattice.widthGrid() != widthGrid || workspace.lattice.depthGrid() != depthGrid) {
+            workspace = new Workspace(Lattice.create(heightGrid, widthGrid, depthGrid, packed));
+            workspaces.set(workspace);
+        }
+        return workspace;
+    }
+
+    private NewmanZiff sweep(int heightGrid, int widthGrid, int depthGrid) {
+        NewmanZiff sweep = sweeps.get();
+        if (sweep == null || sweep.heightGrid() != heightGrid || sweep.widthGrid() != widthGrid
+                || sweep.depthGrid() != depthGrid) {
+            sweep = new NewmanZiff(heightGrid, widthGrid, depthGrid);
+            sweeps.set(sweep);
+        }
+        return sweep;
+    }
+
+    /* Рабочая решетка потока */
+    // Решетка и стек заливки создаются один раз на поток,
+    // поэтому итерация не выделяет память.
+    private static final class Workspace {
+
+        final Lattice lattice;
+        final SpanningCluster floodFill = new SpanningCluster();
+
+        Workspace(Lattice lattice) {
+            this.lattice = lattice;
+        }
+
+        // Одна итерация: заполнение решетки генератором и проверка
+        // наличия стягивающего кластера. Границы решетки не изменяются
+        // и остаются препятствиями. При сборе статистики кластеры
+        // размечаются, а не заливаются.
+        boolean trial(LatticeGenerator generator, SplittableRandom random, double p, ClusterStatistics statistics) {
+            generator.generate(lattice, random, p);
+            if (statistics == null) {
+                return floodFill.fill(lattice);
+            }
+            SpanningCluster.Clusters clusters = floodFill.label(lattice);
+            statistics.add(clusters);
+            return clusters.spans();
+        }
+    }
+}
\ No newline at end of file
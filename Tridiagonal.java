@@ -0,0 +1,70 @@
+/**
+ * Tridiagonal
+ *
+ * Метод прогонки (алгоритм Томаса) для систем с трехдиагональной матрицей с постоянными коэффициентами. Прогоночные
+ * коэффициенты зависят только от матрицы, поэтому вычисляются один раз в конструкторе, а при решении выполняются
+ * только прямой и обратный ход по правой части.
+ *
+ * @author Artur Manukian
+ */
+
+public class Tridiagonal {
+
+    private final int n;
+    private final double sub;
+    // Прогоночные коэффициенты c'[k] и 1 / (b - a * c'[k - 1]).
+    private final double[] cPrime;
+    private final double[] inverse;
+
+    // sub, diagonal, sup - элементы под, на и над главной диагональю,
+    // n - количество неизвестных.
+    public Tridiagonal(double sub, double diagonal, double sup, int n) {
+        this(sub, diagonal, sup, n, diagonal, diagonal);
+    }
+
+    // first и last - диагональные элементы первого и последнего уравнений,
+    // которые отличаются, например, при граничных условиях второго рода.
+    public Tridiagonal(double sub, double diagonal, double sup, int n, double first, double last) {
+        this.n = n;
+        this.sub = sub;
+        this.cPrime = new double[n];
+        this.inverse = new double[n];
+        inverse[0] = 1 / first;
+        cPrime[0] = sup * inverse[0];
+        for (int k = 1; k < n; k++) {
+            inverse[k] = 1 / ((k == n - 1 ? last : diagonal) - sub * cPrime[k - 1]);
+            cPrime[k] = sup * inverse[k];
+        }
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /* Решение нескольких систем одновременно */
+    // Правая часть k-того уравнения системы l находится в d[from + k * step + l],
+    // l = 0..lanes-1, и заменяется решением. При lanes = 1 и step = 1 решается
+    // одна система для строки сетки, при step = sizeGrid - системы для полосы
+    // соседних столбцов, причем внутренний цикл идет по смежным элементам.
+    public void solve(double[] d, int from, int step, int lanes) {
+        for (int l = 0; l < lanes; l++) {
+            d[from + l] *= inverse[0];
+        }
+        for (int k = 1; k < n; k++) {
+            int current = from + k * step;
+            int previous = current - step;
+            double m = inverse[k];
+            for (int l = 0; l < lanes; l++) {
+                d[current + l] = (d[current + l] - sub * d[previous + l]) * m;
+            }
+        }
+        for (int k = n - 2; k >= 0; k--) {
+            int current = from + k * step;
+            int next = current + step;
+            double c = cPrime[k];
+            for (int l = 0; l < lanes; l++) {
+                d[current + l] -= c * d[next + l];
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DiffusionBenchmark
+ *
+ * Один шаг по времени решателя диффузии для разных размеров сетки, разностных схем и количества потоков. Источник
+ * находится в центре сетки, шаг по сетке подбирается по условию устойчивости, как в Diffusion.
+ *
+ * @author Artur Manukian
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class DiffusionBenchmark {
+
+    @Param({"100", "1000", "4000"})
+    int sizeGrid;
+
+    @Param({"explicit", "adi"})
+    String scheme;
+
+    @Param({"1", "4"})
+    int threads;
+
+    private Object solver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int center = sizeGrid / 2;
+        Object scenario = Models.scenario(
+                "sizeGrid", Integer.toString(sizeGrid),
+                "scheme", scheme,
+                "source", center + " " + center + " 2");
+        solver = Models.diffusionSolver(scenario, threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Models.shutdownSolver(solver);
+    }
+
+    @Benchmark
+    public Object step() {
+        Models.step(solver);
+        return solver;
+    }
+}
\ No newline at end of file
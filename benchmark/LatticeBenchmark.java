@@ -0,0 +1,73 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LatticeBenchmark
+ *
+ * Одна итерация метода Монте-Карло по частям: заполнение решетки генератором (generate), заполнение и заливка от
+ * верхней границы (trial), разметка кластеров алгоритмом Хошена-Копельмана (label). Время заливки - разность trial
+ * и generate. Размеры решетки от 100 до 10000, значения p около порога протекания.
+ *
+ * @author Artur Manukian
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class LatticeBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int size;
+
+    @Param({"0.38", "0.41", "0.44"})
+    double p;
+
+    @Param({"false", "true"})
+    boolean packed;
+
+    private Object lattice;
+    private Object spanningCluster;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lattice = Models.lattice(size, size, packed);
+        spanningCluster = Models.spanningCluster();
+        random = new SplittableRandom(2018);
+        Models.fill(lattice, random, p);
+    }
+
+    @Benchmark
+    public Object generate() {
+        Models.fill(lattice, random, p);
+        return lattice;
+    }
+
+    @Benchmark
+    public boolean trial() {
+        Models.fill(lattice, random, p);
+        return Models.spans(spanningCluster, lattice);
+    }
+
+    @Benchmark
+    public Object label() {
+        return Models.label(spanningCluster, lattice);
+    }
+}
\ No newline at end of file
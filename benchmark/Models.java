@@ -0,0 +1,218 @@
+package benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.SplittableRandom;
+
+/**
+ * Models
+ *
+ * Доступ к классам моделей из тестов производительности. JMH не допускает тесты в пакете по умолчанию, а классы
+ * моделей находятся именно в нем, поэтому вызовы выполняются через MethodHandle. Дескрипторы хранятся в статических
+ * финальных полях и вызываются через invokeExact, поэтому JIT-компилятор встраивает их так же, как прямые вызовы.
+ *
+ * @author Artur Manukian
+ */
+
+final class Models {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> LATTICE = type("Lattice");
+    private static final Class<?> SPANNING_CLUSTER = type("SpanningCluster");
+    private static final Class<?> TRIAL_EXECUTOR = type("TrialExecutor");
+    private static final Class<?> SCENARIO = type("Scenario");
+    private static final Class<?> DIFFUSION_SOLVER = type("DiffusionSolver");
+
+    /* Перколяция */
+    private static final MethodHandle LATTICE_CREATE = statics(LATTICE, "create",
+            MethodType.methodType(LATTICE, int.class, int.class, boolean.class));
+    private static final MethodHandle LATTICE_FILL = virtual(LATTICE, "fill",
+            MethodType.methodType(void.class, SplittableRandom.class, double.class));
+    private static final MethodHandle SPANNING_CLUSTER_NEW = constructor(SPANNING_CLUSTER,
+            MethodType.methodType(void.class));
+    private static final MethodHandle SPANNING_CLUSTER_FILL = virtual(SPANNING_CLUSTER, "fill",
+            MethodType.methodType(boolean.class, LATTICE));
+    private static final MethodHandle SPANNING_CLUSTER_LABEL = virtual(SPANNING_CLUSTER, "label",
+            MethodType.methodType(type("SpanningCluster$Clusters"), LATTICE));
+    private static final MethodHandle TRIAL_EXECUTOR_NEW = constructor(TRIAL_EXECUTOR,
+            MethodType.methodType(void.class, long.class, int.class, boolean.class));
+    private static final MethodHandle TRIAL_EXECUTOR_RUN = virtual(TRIAL_EXECUTOR, "run",
+            MethodType.methodType(long[].class, int.class, int.class, double[].class, int.class));
+    private static final MethodHandle TRIAL_EXECUTOR_NEWMAN_ZIFF = virtual(TRIAL_EXECUTOR, "runNewmanZiff",
+            MethodType.methodType(double[].class, int.class, int.class, int.class));
+    private static final MethodHandle TRIAL_EXECUTOR_SHUTDOWN = virtual(TRIAL_EXECUTOR, "shutdown",
+            MethodType.methodType(void.class));
+
+    /* Диффузия */
+    private static final MethodHandle SCENARIO_NEW = constructor(SCENARIO, MethodType.methodType(void.class));
+    private static final MethodHandle SCENARIO_SET = virtual(SCENARIO, "set",
+            MethodType.methodType(SCENARIO, String.class, String.class));
+    private static final MethodHandle DIFFUSION_SOLVER_NEW = constructor(DIFFUSION_SOLVER,
+            MethodType.methodType(void.class, SCENARIO, int.class));
+    private static final MethodHandle DIFFUSION_SOLVER_STEP = virtual(DIFFUSION_SOLVER, "step",
+            MethodType.methodType(void.class));
+    private static final MethodHandle DIFFUSION_SOLVER_SHUTDOWN = virtual(DIFFUSION_SOLVER, "shutdown",
+            MethodType.methodType(void.class));
+
+    private Models() {
+    }
+
+    static Object lattice(int heightGrid, int widthGrid, boolean packed) {
+        try {
+            return (Object) LATTICE_CREATE.invokeExact(heightGrid, widthGrid, packed);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void fill(Object lattice, SplittableRandom random, double p) {
+        try {
+            LATTICE_FILL.invokeExact(lattice, (Object) random, p);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object spanningCluster() {
+        try {
+            return (Object) SPANNING_CLUSTER_NEW.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean spans(Object spanningCluster, Object lattice) {
+        try {
+            return (boolean) SPANNING_CLUSTER_FILL.invokeExact(spanningCluster, lattice);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object label(Object spanningCluster, Object lattice) {
+        try {
+            return (Object) SPANNING_CLUSTER_LABEL.invokeExact(spanningCluster, lattice);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object trialExecutor(long seed, int threads, boolean packed) {
+        try {
+            return (Object) TRIAL_EXECUTOR_NEW.invokeExact(seed, threads, packed);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static long[] run(Object executor, int heightGrid, int widthGrid, double[] p, int n) {
+        try {
+            return (long[]) (Object) TRIAL_EXECUTOR_RUN.invokeExact(executor, heightGrid, widthGrid, (Object) p, n);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static double[] runNewmanZiff(Object executor, int heightGrid, int widthGrid, int n) {
+        try {
+            return (double[]) (Object) TRIAL_EXECUTOR_NEWMAN_ZIFF.invokeExact(executor, heightGrid, widthGrid, n);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void shutdownExecutor(Object executor) {
+        try {
+            TRIAL_EXECUTOR_SHUTDOWN.invokeExact(executor);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Сценарий задается парами "ключ", "значение" в формате файла сценария.
+    static Object scenario(String... settings) {
+        try {
+            Object scenario = (Object) SCENARIO_NEW.invokeExact();
+            for (int k = 0; k + 1 < settings.length; k += 2) {
+                scenario = (Object) SCENARIO_SET.invokeExact(scenario,
+                        (Object) settings[k], (Object) settings[k + 1]);
+            }
+            return scenario;
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object diffusionSolver(Object scenario, int threads) {
+        try {
+            return (Object) DIFFUSION_SOLVER_NEW.invokeExact(scenario, threads);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void step(Object solver) {
+        try {
+            DIFFUSION_SOLVER_STEP.invokeExact(solver);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void shutdownSolver(Object solver) {
+        try {
+            DIFFUSION_SOLVER_SHUTDOWN.invokeExact(solver);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Класс модели не найден: " + name, e);
+        }
+    }
+
+    // Все ссылочные типы заменяются на Object, поскольку
+    // классы моделей нельзя назвать в этом пакете.
+    private static MethodHandle statics(Class<?> owner, String name, MethodType type) {
+        try {
+            MethodHandle handle = LOOKUP.findStatic(owner, name, type);
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, MethodType type) {
+        try {
+            MethodHandle handle = LOOKUP.findVirtual(owner, name, type);
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, MethodType type) {
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(owner, type);
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner.getName() + ".<init>", e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
\ No newline at end of file
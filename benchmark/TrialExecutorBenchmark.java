@@ -0,0 +1,66 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TrialExecutorBenchmark
+ *
+ * Масштабирование параллельного расчета по количеству потоков: серия итераций для трех значений p около порога
+ * (sweep) и кривая Pc(p) алгоритмом Ньюмана-Зиффа (newmanZiff) с тем же количеством итераций.
+ *
+ * @author Artur Manukian
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrialExecutorBenchmark {
+
+    @Param({"100", "300"})
+    int size;
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    @Param({"1024"})
+    int n;
+
+    private final double[] p = {0.38, 0.41, 0.44};
+    private Object executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = Models.trialExecutor(2018, threads, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Models.shutdownExecutor(executor);
+    }
+
+    @Benchmark
+    public long[] sweep() {
+        return Models.run(executor, size, size, p, n);
+    }
+
+    @Benchmark
+    public double[] newmanZiff() {
+        return Models.runNewmanZiff(executor, size, size, n);
+    }
+}
\ No newline at end of file